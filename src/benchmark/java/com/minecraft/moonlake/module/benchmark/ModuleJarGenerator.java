@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.minecraft.moonlake.module.benchmark;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Stream;
+
+/**
+ * 生成用于基准测试的模块 Jar 文件. 第 i 个模块名为 BenchModule{i}, 主类为 bench.m{i}.Main, 并包含 bench.m{i}.C0 ~ C{n-1} 类.
+ */
+public final class ModuleJarGenerator {
+
+    private ModuleJarGenerator() {
+    }
+
+    public static String moduleName(int index) {
+        return "BenchModule" + index;
+    }
+
+    public static String className(int index, int classIndex) {
+        return "bench.m" + index + ".C" + classIndex;
+    }
+
+    public static File generate(int moduleCount, int classCount) throws IOException {
+        Path root = Files.createTempDirectory("moonlake-module-bench");
+        Path sources = Files.createDirectories(root.resolve("src"));
+        Path classes = Files.createDirectories(root.resolve("classes"));
+        File modules = Files.createDirectories(root.resolve("modules")).toFile();
+        List<String> files = new ArrayList<>();
+        for(int i = 0; i < moduleCount; i++) {
+            Path packageDir = Files.createDirectories(sources.resolve("bench/m" + i));
+            write(packageDir.resolve("Main.java"), "package bench.m" + i + ";\n" +
+                    "public class Main extends com.minecraft.moonlake.module.java.JavaModule {\n" +
+                    "    @Override public void onEnable() { C0.value(); }\n" +
+                    "}\n");
+            for(int j = 0; j < classCount; j++)
+                write(packageDir.resolve("C" + j + ".java"), "package bench.m" + i + ";\n" +
+                        "public class C" + j + " {\n" +
+                        "    public static int value() { return " + j + "; }\n" +
+                        "}\n");
+        }
+        try (Stream<Path> stream = Files.walk(sources)) {
+            stream.filter(path -> path.toString().endsWith(".java")).forEach(path -> files.add(path.toString()));
+        }
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if(compiler == null)
+            throw new IllegalStateException("基准测试需要在 JDK 中运行以编译模块.");
+        List<String> arguments = new ArrayList<>();
+        arguments.add("-nowarn");
+        arguments.add("-classpath");
+        arguments.add(System.getProperty("java.class.path"));
+        arguments.add("-d");
+        arguments.add(classes.toString());
+        arguments.addAll(files);
+        if(compiler.run(null, null, null, arguments.toArray(new String[arguments.size()])) != 0)
+            throw new IllegalStateException("无法编译基准测试模块.");
+        for(int i = 0; i < moduleCount; i++) {
+            File jar = new File(modules, String.format("module-%04d.jar", i));
+            try (JarOutputStream output = new JarOutputStream(Files.newOutputStream(jar.toPath()))) {
+                output.putNextEntry(new JarEntry("module.properties"));
+                output.write(("name=" + moduleName(i) + "\nmain=bench.m" + i + ".Main\nversion=1.0\n").getBytes(StandardCharsets.UTF_8));
+                output.closeEntry();
+                Path packageDir = classes.resolve("bench/m" + i);
+                try (Stream<Path> stream = Files.list(packageDir)) {
+                    for(Path classFile : (Iterable<Path>) stream::iterator) {
+                        output.putNextEntry(new JarEntry("bench/m" + i + "/" + classFile.getFileName()));
+                        Files.copy(classFile, output);
+                        output.closeEntry();
+                    }
+                }
+            }
+        }
+        return modules;
+    }
+
+    public static void delete(File modules) throws IOException {
+        Path root = modules.toPath().getParent();
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static void write(Path path, String content) throws IOException {
+        try (OutputStream output = Files.newOutputStream(path)) {
+            output.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.minecraft.moonlake.module.benchmark;
+
+import com.minecraft.moonlake.module.ModuleManager;
+import com.minecraft.moonlake.module.java.JavaModuleManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 模块目录的加载与启用耗时.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+public class ModuleLoadBenchmark {
+
+    @Param({ "10", "80" })
+    public int moduleCount;
+
+    @Param({ "20" })
+    public int classCount;
+
+    @Param({ "false", "true" })
+    public boolean parallel;
+
+    /** 为 false 时每次加载前删除模块描述与类索引缓存, 测量冷启动 */
+    @Param({ "true", "false" })
+    public boolean indexCache;
+
+    private File modules;
+    private ModuleManager moduleManager;
+
+    @Setup(Level.Trial)
+    public void generate() throws IOException {
+        modules = ModuleJarGenerator.generate(moduleCount, classCount);
+    }
+
+    @Setup(Level.Invocation)
+    public void createManager() throws IOException {
+        if(!indexCache)
+            Files.deleteIfExists(new File(modules, ".module-index").toPath());
+        moduleManager = parallel ? new JavaModuleManager(ForkJoinPool.commonPool()) : new JavaModuleManager();
+    }
+
+    @TearDown(Level.Invocation)
+    public void clearManager() {
+        moduleManager.clearModules();
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() throws IOException {
+        ModuleJarGenerator.delete(modules);
+    }
+
+    @Benchmark
+    public int loadModules() {
+        return moduleManager.loadModules(modules).length;
+    }
+
+    @Benchmark
+    public int loadAndEnableModules() {
+        int count = moduleManager.loadModules(modules).length;
+        moduleManager.enableModules();
+        return count;
+    }
+}
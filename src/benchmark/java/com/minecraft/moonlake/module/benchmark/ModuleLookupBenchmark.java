@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.minecraft.moonlake.module.benchmark;
+
+import com.minecraft.moonlake.module.Module;
+import com.minecraft.moonlake.module.ModuleManager;
+import com.minecraft.moonlake.module.java.JavaModuleManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 多线程同时查询模块与启用状态的吞吐量.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(8)
+public class ModuleLookupBenchmark {
+
+    @Param({ "80" })
+    public int moduleCount;
+
+    private File modules;
+    private ModuleManager moduleManager;
+    private Module module;
+    private String moduleName;
+
+    @Setup
+    public void setup() throws IOException {
+        modules = ModuleJarGenerator.generate(moduleCount, 1);
+        moduleManager = new JavaModuleManager();
+        moduleManager.loadModules(modules);
+        moduleManager.enableModules();
+        moduleName = ModuleJarGenerator.moduleName(moduleCount / 2);
+        module = moduleManager.getModule(moduleName);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        moduleManager.clearModules();
+        ModuleJarGenerator.delete(modules);
+    }
+
+    @Benchmark
+    public Module getModule() {
+        return moduleManager.getModule(moduleName);
+    }
+
+    @Benchmark
+    public boolean isEnableModule() {
+        return moduleManager.isEnable(module);
+    }
+
+    @Benchmark
+    public boolean isEnableName() {
+        return moduleManager.isEnable(moduleName);
+    }
+}
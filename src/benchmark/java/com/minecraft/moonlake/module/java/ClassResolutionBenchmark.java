@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.minecraft.moonlake.module.java;
+
+import com.minecraft.moonlake.module.benchmark.ModuleJarGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 跨模块的类查找, 分别为已缓存的类、不经过全局类缓存由其他模块提供的类和任何模块都不存在的类.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ClassResolutionBenchmark {
+
+    @Param({ "10", "80" })
+    public int moduleCount;
+
+    private File modules;
+    private JavaModuleManager moduleManager;
+    private JavaModuleLoader loader;
+    private JavaModuleClassLoader firstLoader;
+    private String cachedClass;
+    private String lastClass;
+
+    @Setup
+    public void setup() throws IOException {
+        modules = ModuleJarGenerator.generate(moduleCount, 20);
+        moduleManager = new JavaModuleManager();
+        moduleManager.loadModules(modules);
+        loader = (JavaModuleLoader) moduleManager.getLoader();
+        firstLoader = (JavaModuleClassLoader) moduleManager.getModule(ModuleJarGenerator.moduleName(0)).getClass().getClassLoader();
+        cachedClass = ModuleJarGenerator.className(0, 0);
+        lastClass = ModuleJarGenerator.className(moduleCount - 1, 19);
+        loader.getClassByName(cachedClass);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        moduleManager.clearModules();
+        ModuleJarGenerator.delete(modules);
+    }
+
+    @Benchmark
+    public Class<?> hitCached() {
+        return loader.getClassByName(cachedClass);
+    }
+
+    /** 第一次调用后全局类缓存就会命中, 因此直接测量类名索引和提供模块的查找, 即全局缓存未命中时的路径 */
+    @Benchmark
+    public Class<?> hitLastModule() throws ClassNotFoundException {
+        return loader.getClassOwner(lastClass).findClass(lastClass, false);
+    }
+
+    @Benchmark
+    public Class<?> miss() {
+        return loader.getClassByName("bench.missing.Absent");
+    }
+
+    @Benchmark
+    public Object missThroughClassLoader() {
+        try {
+            return Class.forName("bench.missing.Absent", false, firstLoader);
+        } catch (ClassNotFoundException e) {
+            return e;
+        }
+    }
+}
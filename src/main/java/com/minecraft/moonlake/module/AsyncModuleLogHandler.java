@@ -0,0 +1,321 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.minecraft.moonlake.module;
+
+import com.minecraft.moonlake.validate.Validate;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.ErrorManager;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+/**
+ * 异步的日志处理器. 记录放入有界的无锁环形缓冲区, 由后台线程批量交给目标处理器输出, 记录日志的线程不会等待控制台或文件的输出.
+ * 通过 {@link ModuleLogger#setSharedHandler(Handler)} 让所有模块日志记录器共用. 后台线程在第一次记录时启动.
+ */
+public class AsyncModuleLogHandler extends Handler {
+
+    /**
+     * 缓冲区满时的处理策略
+     */
+    public enum OverflowPolicy {
+
+        /** 丢弃新的记录 */
+        DROP,
+
+        /** 等待缓冲区有空位 */
+        BLOCK,
+
+        /** 缓冲区超过一半时 WARNING 以下级别的记录按采样率保留, 满时丢弃 */
+        SAMPLE,
+        ;
+    }
+
+    private static final int BATCH_SIZE = 256;
+
+    private final Handler[] targets;
+    private final OverflowPolicy policy;
+    private final int sampleRate;
+    private final int mask;
+    private final AtomicReferenceArray<LogRecord> buffer;
+    private final AtomicLongArray sequences;
+    private final AtomicLong head;
+    private final AtomicLong tail;
+    private final AtomicLong sampleCounter;
+    private final LongAdder dropped;
+    private final Object startLock;
+    private final Object flushMonitor;
+    private final AtomicInteger flushWaiters;
+    private volatile Thread drainThread;
+    private volatile long flushedPosition;
+    private volatile boolean inferCaller;
+    private volatile boolean waiting;
+    private volatile boolean closed;
+
+    /**
+     * 使用根记录器当前的处理器作为目标, 容量 8192, 满时丢弃.
+     */
+    public AsyncModuleLogHandler() {
+        this(8192, OverflowPolicy.DROP, Logger.getLogger("").getHandlers());
+    }
+
+    public AsyncModuleLogHandler(int capacity, OverflowPolicy policy, Handler... targets) {
+        this(capacity, policy, 8, targets);
+    }
+
+    /**
+     * @param capacity 缓冲区容量, 向上取整为 2 的幂
+     * @param sampleRate 采样策略下每多少条记录保留一条
+     */
+    public AsyncModuleLogHandler(int capacity, OverflowPolicy policy, int sampleRate, Handler... targets) {
+        Validate.isTrue(capacity > 0 && capacity <= 1 << 30, "缓冲区容量必须在 1 到 2^30 之间.");
+        Validate.notNull(policy, "溢出策略对象不能为 null 值.");
+        Validate.isTrue(sampleRate > 0, "采样率必须大于 0.");
+        Validate.notNull(targets, "目标处理器对象不能为 null 值.");
+        int size = Integer.highestOneBit(capacity);
+        if(size < capacity)
+            size <<= 1;
+        this.targets = targets.clone();
+        this.policy = policy;
+        this.sampleRate = sampleRate;
+        this.mask = size - 1;
+        this.buffer = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+        for(int i = 0; i < size; i++)
+            sequences.set(i, i);
+        this.head = new AtomicLong();
+        this.tail = new AtomicLong();
+        this.sampleCounter = new AtomicLong();
+        this.dropped = new LongAdder();
+        this.startLock = new Object();
+        this.flushMonitor = new Object();
+        this.flushWaiters = new AtomicInteger();
+    }
+
+    @Override
+    public void publish(LogRecord record) {
+        if(closed || !isLoggable(record))
+            return;
+        // 调用者只能在记录日志的线程中根据堆栈推断
+        if(inferCaller)
+            record.getSourceClassName();
+        else
+            record.setSourceClassName(record.getLoggerName());
+        Thread thread = drainThread;
+        if(thread == null && (thread = startDrainThread()) == null) {
+            dropped.increment();
+            return;
+        }
+        if(policy == OverflowPolicy.SAMPLE && size() > mask >> 1 && record.getLevel().intValue() < Level.WARNING.intValue()
+                && sampleCounter.getAndIncrement() % sampleRate != 0) {
+            dropped.increment();
+            return;
+        }
+        boolean offered = offer(record);
+        while(!offered && policy == OverflowPolicy.BLOCK && !closed) {
+            LockSupport.unpark(thread);
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100L));
+            offered = offer(record);
+        }
+        if(!offered) {
+            dropped.increment();
+            return;
+        }
+        if(waiting)
+            LockSupport.unpark(thread);
+    }
+
+    /** 等待后台线程输出调用时缓冲区中的记录并刷新目标处理器 */
+    @Override
+    public void flush() {
+        Thread thread = drainThread;
+        if(thread == null || thread == Thread.currentThread()) {
+            flushTargets();
+            return;
+        }
+        long position = tail.get();
+        flushWaiters.incrementAndGet();
+        try {
+            LockSupport.unpark(thread);
+            synchronized (flushMonitor) {
+                while(flushedPosition < position && thread.isAlive())
+                    flushMonitor.wait(100L);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            flushWaiters.decrementAndGet();
+        }
+    }
+
+    /** 停止后台线程, 后台线程退出前输出剩余的记录. 不会关闭目标处理器 */
+    @Override
+    public void close() {
+        Thread thread;
+        synchronized (startLock) {
+            closed = true;
+            thread = drainThread;
+        }
+        if(thread == null || thread == Thread.currentThread())
+            return;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(5L));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public boolean isInferCaller() {
+        return inferCaller;
+    }
+
+    /**
+     * 设置是否在记录日志的线程中推断调用的类和方法. 推断需要遍历堆栈, 默认关闭并使用记录器名称作为来源类名.
+     */
+    public void setInferCaller(boolean inferCaller) {
+        this.inferCaller = inferCaller;
+    }
+
+    /** 因为缓冲区满或采样而丢弃的记录数量 */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /** 缓冲区中等待输出的记录数量 */
+    public int size() {
+        return (int) Math.max(tail.get() - head.get(), 0L);
+    }
+
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    public OverflowPolicy getPolicy() {
+        return policy;
+    }
+
+    private Thread startDrainThread() {
+        synchronized (startLock) {
+            if(drainThread == null && !closed) {
+                Thread thread = new Thread(this::drainLoop, "MoonLake-Module-Log");
+                thread.setDaemon(true);
+                thread.start();
+                drainThread = thread;
+            }
+            return closed ? null : drainThread;
+        }
+    }
+
+    private void drainLoop() {
+        while(!closed) {
+            if(drain(BATCH_SIZE) > 0) {
+                flushed();
+                continue;
+            }
+            waiting = true;
+            if(size() == 0 && !closed) // 设置等待标志后重新检查, 避免错过唤醒
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(100L));
+            waiting = false;
+        }
+        drain(Integer.MAX_VALUE);
+        flushed();
+    }
+
+    /** 只有后台线程读取缓冲区, 输出并刷新后 head 之前的记录都已经完成 */
+    private void flushed() {
+        flushTargets();
+        flushedPosition = head.get();
+        if(flushWaiters.get() > 0) synchronized (flushMonitor) {
+            flushMonitor.notifyAll();
+        }
+    }
+
+    private int drain(int limit) {
+        int count = 0;
+        LogRecord record;
+        while(count < limit && (record = poll()) != null) {
+            count++;
+            for(Handler target : targets) try {
+                target.publish(record);
+            } catch (Exception e) {
+                reportError(null, e, ErrorManager.WRITE_FAILURE);
+            }
+        }
+        return count;
+    }
+
+    private void flushTargets() {
+        for(Handler target : targets) try {
+            target.flush();
+        } catch (Exception e) {
+            reportError(null, e, ErrorManager.FLUSH_FAILURE);
+        }
+    }
+
+    // 有界多生产者多消费者队列: 每个槽位的序号表示它可以被写入 (等于位置) 还是可以被读取 (等于位置 + 1)
+
+    private boolean offer(LogRecord record) {
+        long position = tail.get();
+        for(;;) {
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - position;
+            if(difference == 0L) {
+                if(tail.compareAndSet(position, position + 1L)) {
+                    buffer.lazySet(index, record);
+                    sequences.set(index, position + 1L);
+                    return true;
+                }
+                position = tail.get();
+            } else if(difference < 0L) {
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    private LogRecord poll() {
+        long position = head.get();
+        for(;;) {
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - (position + 1L);
+            if(difference == 0L) {
+                if(head.compareAndSet(position, position + 1L)) {
+                    LogRecord record = buffer.get(index);
+                    buffer.lazySet(index, null);
+                    sequences.set(index, position + mask + 1L);
+                    return record;
+                }
+                position = head.get();
+            } else if(difference < 0L) {
+                return null;
+            } else {
+                position = head.get();
+            }
+        }
+    }
+}
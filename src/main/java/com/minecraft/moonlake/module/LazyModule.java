@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.minecraft.moonlake.module;
+
+import com.minecraft.moonlake.module.exception.ModuleException;
+
+/**
+ * 延迟加载的模块. 在描述中声明 lazy=true 的模块只根据描述注册, 第一次被使用时才实际加载,
+ * 如果此前已经请求启用则同时启用. 实际加载前的启用状态为 false.
+ */
+public interface LazyModule extends Module {
+
+    boolean isActivated();
+
+    /** 实际加载的模块, 还没有加载时返回 null */
+    Module getModule();
+
+    /** 实际加载模块, 已经加载时直接返回 */
+    Module activate() throws ModuleException;
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.minecraft.moonlake.module;
+
+import com.minecraft.moonlake.module.exception.InvalidModuleException;
+import com.minecraft.moonlake.module.exception.ModuleException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+final class ModuleDependencySorter {
+
+    private ModuleDependencySorter() {
+    }
+
+    /**
+     * 按模块的依赖关系将节点分层, 同一层的节点之间不存在依赖, 层内保持输入顺序.
+     *
+     * @param nodes 需要排序的节点
+     * @param descriptor 获取节点的模块描述
+     * @param provided 已经存在的模块名称, 可以满足硬依赖
+     * @param failures 缺少依赖、名称重复或循环依赖而无法排序的节点
+     * @return 按依赖顺序排列的层
+     */
+    static <T> List<List<T>> sort(Collection<T> nodes, Function<T, ModuleDescription> descriptor, Set<String> provided, Map<T, ModuleException> failures) {
+        Map<String, T> byName = new LinkedHashMap<>();
+        for(T node : nodes) {
+            String name = descriptor.apply(node).getName();
+            if(byName.containsKey(name) || provided.contains(name))
+                failures.put(node, new InvalidModuleException("模块名称 '" + name + "' 重复."));
+            else
+                byName.put(name, node);
+        }
+        // 传递性地移除缺少硬依赖的模块
+        boolean changed = true;
+        while(changed) {
+            changed = false;
+            Iterator<T> iterator = byName.values().iterator();
+            while(iterator.hasNext()) {
+                T node = iterator.next();
+                for(String depend : descriptor.apply(node).getDepend()) {
+                    if(!byName.containsKey(depend) && !provided.contains(depend)) {
+                        failures.put(node, new InvalidModuleException("模块 '" + descriptor.apply(node).getName() + "' 缺少依赖模块 '" + depend + "'."));
+                        iterator.remove();
+                        changed = true;
+                        break;
+                    }
+                }
+            }
+        }
+        Map<String, Set<String>> hardBefore = new HashMap<>();
+        Map<String, Set<String>> softBefore = new HashMap<>();
+        for(String name : byName.keySet()) {
+            hardBefore.put(name, new HashSet<>());
+            softBefore.put(name, new HashSet<>());
+        }
+        for(Map.Entry<String, T> entry : byName.entrySet()) {
+            ModuleDescription description = descriptor.apply(entry.getValue());
+            for(String depend : description.getDepend())
+                if(byName.containsKey(depend))
+                    hardBefore.get(entry.getKey()).add(depend);
+            for(String softDepend : description.getSoftDepend())
+                if(byName.containsKey(softDepend))
+                    softBefore.get(entry.getKey()).add(softDepend);
+            for(String loadBefore : description.getLoadBefore())
+                if(byName.containsKey(loadBefore))
+                    softBefore.get(loadBefore).add(entry.getKey());
+        }
+        List<List<T>> levels = new ArrayList<>();
+        Set<String> remaining = new HashSet<>(byName.keySet());
+        while(!remaining.isEmpty()) {
+            List<String> level = new ArrayList<>();
+            for(String name : byName.keySet())
+                if(remaining.contains(name) && isReady(hardBefore.get(name), remaining) && isReady(softBefore.get(name), remaining))
+                    level.add(name);
+            if(level.isEmpty()) {
+                // 软依赖形成了环, 放弃软依赖约束取出第一个可用的模块
+                for(String name : byName.keySet())
+                    if(remaining.contains(name) && isReady(hardBefore.get(name), remaining)) {
+                        level.add(name);
+                        break;
+                    }
+            }
+            if(level.isEmpty()) {
+                for(String name : byName.keySet())
+                    if(remaining.contains(name))
+                        failures.put(byName.get(name), new InvalidModuleException("模块 '" + name + "' 存在循环依赖."));
+                break;
+            }
+            List<T> levelNodes = new ArrayList<>(level.size());
+            for(String name : level) {
+                remaining.remove(name);
+                levelNodes.add(byName.get(name));
+            }
+            levels.add(levelNodes);
+        }
+        return levels;
+    }
+
+    private static boolean isReady(Set<String> before, Set<String> remaining) {
+        for(String name : before)
+            if(remaining.contains(name))
+                return false;
+        return true;
+    }
+}
@@ -21,7 +21,9 @@ package com.minecraft.moonlake.module;
 import com.minecraft.moonlake.module.exception.InvalidModuleDescriptionException;
 
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Properties;
 
@@ -33,6 +35,12 @@ public final class ModuleDescription {
     private String website;
     private String description;
     private List<String> authors;
+    private List<String> depend = Collections.emptyList();
+    private List<String> softDepend = Collections.emptyList();
+    private List<String> loadBefore = Collections.emptyList();
+    private boolean lazy;
+    private long enableTimeout = -1L;
+    private long disableTimeout = -1L;
 
     public ModuleDescription(InputStream inputStream) throws InvalidModuleDescriptionException {
         try {
@@ -48,6 +56,12 @@ public final class ModuleDescription {
                 if(property != null && !property.trim().isEmpty())
                     this.authors = Arrays.asList(property.split(","));
             }
+            this.depend = parseNames(properties.getProperty("depend"));
+            this.softDepend = parseNames(properties.getProperty("softdepend"));
+            this.loadBefore = parseNames(properties.getProperty("loadbefore"));
+            this.lazy = Boolean.parseBoolean(properties.getProperty("lazy", "false").trim());
+            this.enableTimeout = parseTimeout(properties.getProperty("enable-timeout"));
+            this.disableTimeout = parseTimeout(properties.getProperty("disable-timeout"));
         } catch (Exception e) {
             throw new InvalidModuleDescriptionException(e);
         }
@@ -83,7 +97,55 @@ public final class ModuleDescription {
         return authors;
     }
 
+    /** 必须在此模块之前加载并启用的模块名称 */
+    public List<String> getDepend() {
+        return depend;
+    }
+
+    /** 如果存在则在此模块之前加载并启用的模块名称 */
+    public List<String> getSoftDepend() {
+        return softDepend;
+    }
+
+    /** 如果存在则在此模块之后加载并启用的模块名称 */
+    public List<String> getLoadBefore() {
+        return loadBefore;
+    }
+
+    /** 是否在第一次使用时才实际加载模块 */
+    public boolean isLazy() {
+        return lazy;
+    }
+
+    /** 启用模块的时间预算毫秒数, 0 为不限制, 小于 0 为使用模块加载器的默认值 */
+    public long getEnableTimeout() {
+        return enableTimeout;
+    }
+
+    /** 关闭模块的时间预算毫秒数, 0 为不限制, 小于 0 为使用模块加载器的默认值 */
+    public long getDisableTimeout() {
+        return disableTimeout;
+    }
+
     public String getFullName() {
         return String.format("%s v%s", name, version);
     }
+
+    private static long parseTimeout(String property) {
+        if(property == null || property.trim().isEmpty())
+            return -1L;
+        return Math.max(Long.parseLong(property.trim()), 0L);
+    }
+
+    private static List<String> parseNames(String property) {
+        if(property == null || property.trim().isEmpty())
+            return Collections.emptyList();
+        List<String> names = new ArrayList<>();
+        for(String name : property.split(",")) {
+            name = name.trim();
+            if(!name.isEmpty())
+                names.add(name.replace(' ', '_'));
+        }
+        return Collections.unmodifiableList(names);
+    }
 }
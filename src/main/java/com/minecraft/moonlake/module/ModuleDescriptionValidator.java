@@ -0,0 +1,31 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package com.minecraft.moonlake.module;
+
+import com.minecraft.moonlake.module.exception.InvalidModuleException;
+
+/**
+ * 在模块加载器读取模块描述之后、构建类加载器之前检查模块描述, 例如检查依赖的模块是否已经加载.
+ */
+@FunctionalInterface
+public interface ModuleDescriptionValidator {
+
+    void validate(ModuleDescription description) throws InvalidModuleException;
+}
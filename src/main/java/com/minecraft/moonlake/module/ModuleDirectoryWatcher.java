@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.minecraft.moonlake.module;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public final class ModuleDirectoryWatcher implements Closeable {
+
+    private final SimpleModuleManager manager;
+    private final File rootDir;
+    private final long debounceMillis;
+    private final WatchService watchService;
+    private final Map<File, PendingFile> pending;
+    private final Thread thread;
+    private volatile boolean running;
+
+    ModuleDirectoryWatcher(SimpleModuleManager manager, File rootDir, long debounceMillis) throws IOException {
+        this.manager = manager;
+        this.rootDir = rootDir.getAbsoluteFile();
+        this.debounceMillis = debounceMillis;
+        this.pending = new HashMap<>();
+        this.watchService = rootDir.toPath().getFileSystem().newWatchService();
+        this.rootDir.toPath().register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY,
+                StandardWatchEventKinds.ENTRY_DELETE);
+        this.thread = new Thread(this::run, "MoonLakeModule-Watcher-" + this.rootDir.getName());
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        running = true;
+        thread.start();
+    }
+
+    public File getRootDir() {
+        return rootDir;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        watchService.close();
+        thread.interrupt();
+    }
+
+    private void run() {
+        long pollMillis = Math.max(debounceMillis / 2, 50L);
+        while(running) {
+            WatchKey key;
+            try {
+                key = watchService.poll(pollMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                break;
+            }
+            if(key != null) {
+                for(WatchEvent<?> event : key.pollEvents()) {
+                    if(event.kind() == StandardWatchEventKinds.OVERFLOW)
+                        rescan();
+                    else
+                        touch(rootDir.toPath().resolve((Path) event.context()).toFile());
+                }
+                if(!key.reset()) {
+                    running = false;
+                    break;
+                }
+            }
+            processPending();
+        }
+    }
+
+    /** 事件丢失时重新扫描目录, 只处理新增、删除以及大小或修改时间与加载时不同的模块文件 */
+    private void rescan() {
+        File[] files = rootDir.listFiles();
+        if(files != null)
+            for(File file : files)
+                if(manager.isModuleFileChanged(file))
+                    touch(file);
+        for(File file : manager.getModuleFiles())
+            if(rootDir.equals(file.getAbsoluteFile().getParentFile()) && !file.exists())
+                touch(file.getAbsoluteFile());
+    }
+
+    private void touch(File file) {
+        if(!manager.isModuleFile(file))
+            return;
+        PendingFile pendingFile = pending.get(file);
+        if(pendingFile == null)
+            pending.put(file, new PendingFile(file));
+        else
+            pendingFile.update();
+    }
+
+    private void processPending() {
+        long now = System.currentTimeMillis();
+        Iterator<PendingFile> iterator = pending.values().iterator();
+        while(iterator.hasNext()) {
+            PendingFile pendingFile = iterator.next();
+            if(now - pendingFile.lastEvent < debounceMillis)
+                continue;
+            if(pendingFile.isChanged()) {
+                // 文件仍然在写入, 等待下一个静默期
+                pendingFile.update();
+                continue;
+            }
+            iterator.remove();
+            try {
+                process(pendingFile.file);
+            } catch (Exception e) {
+                manager.handlerException(e);
+            }
+        }
+    }
+
+    private void process(File file) throws Exception {
+        Module module = manager.getModule(file);
+        if(!file.exists()) {
+            if(module != null)
+                manager.unloadModule(module);
+        } else if(module != null) {
+            manager.reloadModule(module);
+        } else {
+            module = manager.loadModule(file);
+            if(module != null)
+                manager.enableModule(module);
+        }
+    }
+
+    private static final class PendingFile {
+
+        private final File file;
+        private long lastEvent;
+        private long length;
+        private long lastModified;
+
+        private PendingFile(File file) {
+            this.file = file;
+            update();
+        }
+
+        private void update() {
+            lastEvent = System.currentTimeMillis();
+            length = file.length();
+            lastModified = file.lastModified();
+        }
+
+        private boolean isChanged() {
+            return file.length() != length || file.lastModified() != lastModified;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.minecraft.moonlake.module;
+
+/**
+ * 模块生命周期的监听器, 由模块加载器在模块启用之后和关闭之后同步调用. 用于清理模块注册的服务、事件处理器和任务.
+ */
+public interface ModuleLifecycleListener {
+
+    default void onModuleEnabled(Module module) {
+    }
+
+    default void onModuleDisabled(Module module) {
+    }
+}
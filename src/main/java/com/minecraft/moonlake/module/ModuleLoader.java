@@ -20,6 +20,8 @@ package com.minecraft.moonlake.module;
 
 import com.minecraft.moonlake.module.exception.InvalidModuleDescriptionException;
 import com.minecraft.moonlake.module.exception.InvalidModuleException;
+import com.minecraft.moonlake.module.exception.ModuleTimeoutException;
+import com.minecraft.moonlake.module.metrics.ModuleMetricsRegistry;
 
 import java.io.File;
 
@@ -27,9 +29,56 @@ public interface ModuleLoader {
 
     Module loadModule(File moduleFile) throws InvalidModuleException;
 
+    /**
+     * 加载模块, 并在构建类加载器之前以读取的模块描述调用检查器. 默认实现单独读取一次模块描述, 实现类应当复用加载时读取的描述.
+     */
+    default Module loadModule(File moduleFile, ModuleDescriptionValidator validator) throws InvalidModuleException, InvalidModuleDescriptionException {
+        if(validator != null)
+            validator.validate(getDescription(moduleFile));
+        return loadModule(moduleFile);
+    }
+
     ModuleDescription getDescription(File moduleFile) throws InvalidModuleDescriptionException;
 
     void enableModule(Module module);
 
     void disableModule(Module module);
+
+    /**
+     * 启用模块, 超过时间预算时按超时策略处理后抛出超时异常, 由调用者根据异常的策略决定是否卸载模块. 默认实现调用 {@link #enableModule(Module)}.
+     */
+    default void enableModuleTimed(Module module) throws ModuleTimeoutException {
+        enableModule(module);
+    }
+
+    /**
+     * 关闭模块, 超过时间预算时按超时策略处理后抛出超时异常. 默认实现调用 {@link #disableModule(Module)}.
+     */
+    default void disableModuleTimed(Module module) throws ModuleTimeoutException {
+        disableModule(module);
+    }
+
+    /** 关闭并卸载模块, 释放模块占用的类加载器和文件句柄, 之后模块不能再启用. 默认实现只关闭模块 */
+    default void unloadModule(Module module) {
+        disableModule(module);
+    }
+
+    /** 此加载器记录的模块指标, 默认实现不记录指标, 为 null */
+    default ModuleMetricsRegistry getMetrics() {
+        return null;
+    }
+
+    /** 使用此加载器的模块管理器, 没有绑定时为 null */
+    default ModuleManager getManager() {
+        return null;
+    }
+
+    /**
+     * 添加模块生命周期的监听器. 默认实现不支持监听, 模块关闭后不会自动注销它注册的服务、事件处理器和任务.
+     */
+    default void addLifecycleListener(ModuleLifecycleListener listener) {
+    }
+
+    default void removeLifecycleListener(ModuleLifecycleListener listener) {
+    }
 }
@@ -17,9 +17,64 @@
 
 package com.minecraft.moonlake.module;
 
+import com.minecraft.moonlake.module.metrics.ModuleMetricsRegistry;
+import com.minecraft.moonlake.validate.Validate;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
 public abstract class ModuleLoaderBase implements ModuleLoader {
 
+    private final ModuleMetricsRegistry metrics;
+    private final List<ModuleLifecycleListener> lifecycleListeners;
+    private volatile ModuleManager manager;
+
     public ModuleLoaderBase() {
+        this.metrics = new ModuleMetricsRegistry();
+        this.lifecycleListeners = new CopyOnWriteArrayList<>();
+    }
+
+    @Override
+    public ModuleMetricsRegistry getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public ModuleManager getManager() {
+        return manager;
+    }
+
+    synchronized void setManager(ModuleManager manager) {
+        if(this.manager != null && this.manager != manager)
+            throw new IllegalStateException("模块加载器已经被其他模块管理器使用.");
+        this.manager = manager;
+    }
+
+    @Override
+    public void addLifecycleListener(ModuleLifecycleListener listener) {
+        Validate.notNull(listener, "监听器对象不能为 null 值.");
+        lifecycleListeners.add(listener);
+    }
+
+    @Override
+    public void removeLifecycleListener(ModuleLifecycleListener listener) {
+        lifecycleListeners.remove(listener);
+    }
+
+    protected final void fireModuleEnabled(Module module) {
+        for(ModuleLifecycleListener listener : lifecycleListeners) try {
+            listener.onModuleEnabled(module);
+        } catch (Exception e) {
+            handlerException(e);
+        }
+    }
+
+    protected final void fireModuleDisabled(Module module) {
+        for(ModuleLifecycleListener listener : lifecycleListeners) try {
+            listener.onModuleDisabled(module);
+        } catch (Exception e) {
+            handlerException(e);
+        }
     }
 
     /** Handle Module Loader Exception */
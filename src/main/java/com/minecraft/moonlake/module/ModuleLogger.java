@@ -18,23 +18,77 @@
 
 package com.minecraft.moonlake.module;
 
-import java.util.logging.Level;
+import java.util.Collections;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.logging.Handler;
 import java.util.logging.LogRecord;
 import java.util.logging.Logger;
 
+/**
+ * 模块的日志记录器, 输出的消息以模块名称为前缀. 级别默认继承自父记录器, 在级别检查通过之后才会添加前缀.
+ * 构建消息的开销较大时使用 {@link #info(java.util.function.Supplier)} 等方法延迟构建.
+ */
 public class ModuleLogger extends Logger {
 
-    private String moduleName;
+    private static final Set<ModuleLogger> loggers = Collections.newSetFromMap(new WeakHashMap<>());
+    private static Handler sharedHandler; // 只在持有 loggers 的锁时修改
+
+    private final String prefix;
 
     public ModuleLogger(Module module) {
+        this(module, Logger.getLogger(""));
+    }
+
+    /**
+     * @param parent 父记录器, 模块的日志记录交由父记录器的处理器输出
+     */
+    public ModuleLogger(Module module, Logger parent) {
         super(module.getClass().getCanonicalName(), null);
-        this.moduleName = "[" + module.getDescription().getName() + "] ";
-        this.setLevel(Level.ALL);
+        this.prefix = "[" + module.getDescription().getName() + "] ";
+        if(parent != null)
+            setParent(parent);
+        synchronized (loggers) {
+            loggers.add(this);
+            if(sharedHandler != null)
+                useSharedHandler(null, sharedHandler);
+        }
     }
 
     @Override
     public void log(LogRecord record) {
-        record.setMessage(moduleName + record.getMessage());
+        if(!isLoggable(record.getLevel()))
+            return;
+        String message = record.getMessage();
+        if(message == null || !message.startsWith(prefix))
+            record.setMessage(prefix.concat(String.valueOf(message)));
         super.log(record);
     }
+
+    private void useSharedHandler(Handler previous, Handler handler) {
+        if(previous != null)
+            removeHandler(previous);
+        if(handler != null)
+            addHandler(handler);
+        setUseParentHandlers(handler == null);
+    }
+
+    public static Handler getSharedHandler() {
+        synchronized (loggers) {
+            return sharedHandler;
+        }
+    }
+
+    /**
+     * 设置所有模块日志记录器共用的处理器, 例如 {@link AsyncModuleLogHandler}. 处理器添加到每个模块日志记录器并关闭向父记录器的传递,
+     * 记录器自身的过滤器和处理器仍然生效. 为 null 则移除并恢复向父记录器传递.
+     */
+    public static void setSharedHandler(Handler handler) {
+        synchronized (loggers) {
+            Handler previous = sharedHandler;
+            sharedHandler = handler;
+            for(ModuleLogger logger : loggers)
+                logger.useSharedHandler(previous, handler);
+        }
+    }
 }
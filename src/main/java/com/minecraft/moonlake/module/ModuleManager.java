@@ -19,18 +19,58 @@
 package com.minecraft.moonlake.module;
 
 import com.minecraft.moonlake.module.exception.InvalidModuleDescriptionException;
+import com.minecraft.moonlake.module.event.ModuleEventBus;
 import com.minecraft.moonlake.module.exception.InvalidModuleException;
+import com.minecraft.moonlake.module.exception.ModuleException;
+import com.minecraft.moonlake.module.metrics.ModuleMetricsRegistry;
+import com.minecraft.moonlake.module.metrics.ModuleResourceSampler;
+import com.minecraft.moonlake.module.scheduler.ModuleScheduler;
+import com.minecraft.moonlake.module.service.ModuleServiceRegistry;
 
 import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public interface ModuleManager {
 
     ModuleLoader getLoader();
 
+    /** 获取模块各生命周期阶段的耗时、类加载数量和失败次数等指标, 模块加载器不记录指标时为 null */
+    default ModuleMetricsRegistry getMetrics() {
+        return getLoader().getMetrics();
+    }
+
+    /** 模块之间的服务注册表, 默认实现不支持时为 null */
+    default ModuleServiceRegistry getServices() {
+        return null;
+    }
+
+    /** 模块之间的事件总线, 默认实现不支持时为 null */
+    default ModuleEventBus getEventBus() {
+        return null;
+    }
+
+    /** 模块共用的任务调度器, 默认实现不支持时为 null */
+    default ModuleScheduler getScheduler() {
+        return null;
+    }
+
+    /** 按模块统计 CPU 时间、分配的字节数和类数量的采样器, 模块加载器不支持时为 null */
+    default ModuleResourceSampler getResourceSampler() {
+        return null;
+    }
+
     Module getModule(String name);
 
     Module[] getModules();
 
+    /** 获取当前已加载模块的只读快照, 之后的加载和卸载不会影响已返回的列表. 默认实现复制 {@link #getModules()} 的结果 */
+    default List<Module> getModuleList() {
+        return Collections.unmodifiableList(Arrays.asList(getModules()));
+    }
+
     int getModuleSize();
 
     boolean isEnable(String name);
@@ -41,6 +81,23 @@ public interface ModuleManager {
 
     Module[] loadModules(File rootDir);
 
+    /** 从模块文件重新加载模块, 依赖此模块的模块也会一起重新加载, 并恢复之前的启用状态. 默认实现不支持重新加载 */
+    default Module reloadModule(Module module) throws InvalidModuleException, InvalidModuleDescriptionException {
+        throw new UnsupportedOperationException("模块管理器不支持重新加载模块.");
+    }
+
+    default Module reloadModule(String name) throws InvalidModuleException, InvalidModuleDescriptionException {
+        Module module = getModule(name);
+        if(module == null)
+            throw new IllegalArgumentException("模块 '" + name + "' 没有被加载.");
+        return reloadModule(module);
+    }
+
+    /** 关闭并卸载模块, 依赖此模块的模块也会一起卸载. 默认实现不支持卸载 */
+    default void unloadModule(Module module) {
+        throw new UnsupportedOperationException("模块管理器不支持卸载模块.");
+    }
+
     void enableModule(Module module);
 
     void enableModules();
@@ -50,4 +107,60 @@ public interface ModuleManager {
     void disableModules();
 
     void clearModules();
+
+    /*
+     * 异步操作: 在管理器的异步执行器中执行, 同一个模块的异步操作按提交顺序依次执行.
+     * 返回的 CompletableFuture 在设置了回调执行器时在回调执行器中完成.
+     * 默认实现在公共线程池中执行同步的方法, 不保证同一个模块的操作顺序.
+     */
+
+    default CompletableFuture<Module> loadModuleAsync(File moduleFile) {
+        return ModuleFutures.supplyAsync(() -> loadModule(moduleFile));
+    }
+
+    default CompletableFuture<Module[]> loadModulesAsync(File rootDir) {
+        return ModuleFutures.supplyAsync(() -> loadModules(rootDir));
+    }
+
+    default CompletableFuture<Module> reloadModuleAsync(Module module) {
+        return ModuleFutures.supplyAsync(() -> reloadModule(module));
+    }
+
+    default CompletableFuture<Module> unloadModuleAsync(Module module) {
+        return ModuleFutures.supplyAsync(() -> {
+            unloadModule(module);
+            return module;
+        });
+    }
+
+    /** 模块没有成功启用时以 ModuleException 异常完成 */
+    default CompletableFuture<Module> enableModuleAsync(Module module) {
+        return ModuleFutures.supplyAsync(() -> {
+            enableModule(module);
+            if(!module.isEnable() && !(module instanceof LazyModule))
+                throw new ModuleException("模块 '" + module.getName() + "' 启用失败.");
+            return module;
+        });
+    }
+
+    default CompletableFuture<Void> enableModulesAsync() {
+        return ModuleFutures.supplyAsync(() -> {
+            enableModules();
+            return null;
+        });
+    }
+
+    default CompletableFuture<Module> disableModuleAsync(Module module) {
+        return ModuleFutures.supplyAsync(() -> {
+            disableModule(module);
+            return module;
+        });
+    }
+
+    default CompletableFuture<Void> disableModulesAsync() {
+        return ModuleFutures.supplyAsync(() -> {
+            disableModules();
+            return null;
+        });
+    }
 }
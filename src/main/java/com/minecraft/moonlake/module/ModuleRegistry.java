@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.minecraft.moonlake.module;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 模块注册表的不可变快照. 管理器在修改时创建新的快照并整体发布, 读取无需加锁.
+ */
+final class ModuleRegistry {
+
+    static final ModuleRegistry EMPTY = new ModuleRegistry(new Module[0], new File[0], new long[0], new long[0]);
+
+    private final Module[] modules;
+    private final File[] files;
+    private final long[] lengths; // 注册时模块文件的大小和修改时间
+    private final long[] lastModifieds;
+    private final List<Module> moduleList;
+    private final Map<String, Integer> indexes;
+
+    private ModuleRegistry(Module[] modules, File[] files, long[] lengths, long[] lastModifieds) {
+        this.modules = modules;
+        this.files = files;
+        this.lengths = lengths;
+        this.lastModifieds = lastModifieds;
+        this.moduleList = Collections.unmodifiableList(Arrays.asList(modules));
+        this.indexes = new HashMap<>(modules.length * 2);
+        for(int i = 0; i < modules.length; i++)
+            indexes.put(modules[i].getDescription().getName(), i);
+    }
+
+    Module get(String name) {
+        Integer index = indexes.get(name);
+        return index != null ? modules[index] : null;
+    }
+
+    Module get(int index) {
+        return modules[index];
+    }
+
+    File getFile(int index) {
+        return files[index];
+    }
+
+    /** 模块文件的大小或修改时间是否与注册时不同 */
+    boolean isFileChanged(int index) {
+        File file = files[index];
+        return file.length() != lengths[index] || file.lastModified() != lastModifieds[index];
+    }
+
+    /** 以绝对路径查找模块文件的位置, 没有注册时返回 -1 */
+    int indexOf(File file) {
+        File absoluteFile = file.getAbsoluteFile();
+        for(int i = 0; i < files.length; i++)
+            if(files[i].getAbsoluteFile().equals(absoluteFile))
+                return i;
+        return -1;
+    }
+
+    int indexOf(Module module) {
+        Integer index = indexes.get(module.getName());
+        if(index == null)
+            return -1;
+        Module registered = modules[index];
+        if(registered == module)
+            return index;
+        // 延迟加载的模块在替换前以实际加载的模块查找
+        if(registered instanceof LazyModule && ((LazyModule) registered).getModule() == module)
+            return index;
+        return -1;
+    }
+
+    boolean contains(Module module) {
+        return indexOf(module) != -1;
+    }
+
+    boolean contains(String name) {
+        return indexes.containsKey(name);
+    }
+
+    Set<String> names() {
+        return Collections.unmodifiableSet(indexes.keySet());
+    }
+
+    int size() {
+        return modules.length;
+    }
+
+    Module[] toArray() {
+        return modules.clone();
+    }
+
+    File[] toFileArray() {
+        return files.clone();
+    }
+
+    List<Module> asList() {
+        return moduleList;
+    }
+
+    ModuleRegistry add(Module module, File file) {
+        int index = indexes.containsKey(module.getName()) ? indexes.get(module.getName()) : -1;
+        if(index != -1) // 同名模块覆盖之前的注册
+            return set(index, module, file);
+        Module[] modules = Arrays.copyOf(this.modules, this.modules.length + 1);
+        File[] files = Arrays.copyOf(this.files, this.files.length + 1);
+        long[] lengths = Arrays.copyOf(this.lengths, this.lengths.length + 1);
+        long[] lastModifieds = Arrays.copyOf(this.lastModifieds, this.lastModifieds.length + 1);
+        modules[modules.length - 1] = module;
+        files[files.length - 1] = file;
+        lengths[lengths.length - 1] = file.length();
+        lastModifieds[lastModifieds.length - 1] = file.lastModified();
+        return new ModuleRegistry(modules, files, lengths, lastModifieds);
+    }
+
+    ModuleRegistry set(int index, Module module, File file) {
+        Module[] modules = this.modules.clone();
+        File[] files = this.files.clone();
+        long[] lengths = this.lengths.clone();
+        long[] lastModifieds = this.lastModifieds.clone();
+        modules[index] = module;
+        files[index] = file;
+        lengths[index] = file.length();
+        lastModifieds[index] = file.lastModified();
+        return new ModuleRegistry(modules, files, lengths, lastModifieds);
+    }
+
+    ModuleRegistry remove(Module module) {
+        int index = indexOf(module);
+        if(index == -1)
+            return this;
+        Module[] modules = new Module[this.modules.length - 1];
+        File[] files = new File[this.files.length - 1];
+        long[] lengths = new long[this.lengths.length - 1];
+        long[] lastModifieds = new long[this.lastModifieds.length - 1];
+        System.arraycopy(this.modules, 0, modules, 0, index);
+        System.arraycopy(this.modules, index + 1, modules, index, modules.length - index);
+        System.arraycopy(this.files, 0, files, 0, index);
+        System.arraycopy(this.files, index + 1, files, index, files.length - index);
+        System.arraycopy(this.lengths, 0, lengths, 0, index);
+        System.arraycopy(this.lengths, index + 1, lengths, index, lengths.length - index);
+        System.arraycopy(this.lastModifieds, 0, lastModifieds, 0, index);
+        System.arraycopy(this.lastModifieds, index + 1, lastModifieds, index, lastModifieds.length - index);
+        return new ModuleRegistry(modules, files, lengths, lastModifieds);
+    }
+}
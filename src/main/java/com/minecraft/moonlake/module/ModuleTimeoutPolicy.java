@@ -0,0 +1,34 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.minecraft.moonlake.module;
+
+/**
+ * 模块的启用或关闭超过时间预算时的处理策略
+ */
+public enum ModuleTimeoutPolicy {
+
+    /** 让回调在后台继续执行, 模块状态按正常完成处理 */
+    SKIP,
+
+    /** 中断执行回调的线程并等待它结束, 启用超时的模块标记为没有启用. 线程在时间预算内仍没有结束时按 SKIP 处理 */
+    FAIL,
+
+    /** 按 FAIL 处理后从管理器中卸载模块以及依赖它的模块. 延迟加载的模块在类查找中被启用时没有经过管理器, 按 FAIL 处理 */
+    UNLOAD,
+    ;
+}
@@ -18,27 +18,108 @@
 
 package com.minecraft.moonlake.module;
 
+import com.minecraft.moonlake.module.event.ModuleEventBus;
 import com.minecraft.moonlake.module.exception.InvalidModuleDescriptionException;
 import com.minecraft.moonlake.module.exception.InvalidModuleException;
 import com.minecraft.moonlake.module.exception.ModuleException;
+import com.minecraft.moonlake.module.exception.ModuleTimeoutException;
+import com.minecraft.moonlake.module.metrics.ModuleResourceResolver;
+import com.minecraft.moonlake.module.metrics.ModuleResourceSampler;
+import com.minecraft.moonlake.module.scheduler.ModuleScheduler;
+import com.minecraft.moonlake.module.service.ModuleServiceRegistry;
 import com.minecraft.moonlake.validate.Validate;
 
+import java.io.Closeable;
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
 
-public class SimpleModuleManager extends ModuleManagerBase {
+public class SimpleModuleManager extends ModuleManagerBase implements Closeable {
 
-    private final List<Module> modules;
     private final ModuleLoaderFactory loaderFactory;
-    private final Map<String, Module> lookupNames;
+    private volatile ModuleRegistry registry; // 只在持有管理器锁时替换
+    private final Executor executor;
+    private final Map<String, CompletableFuture<?>> inFlight;
+    private final Map<String, Object> moduleLocks;
+    private volatile Executor asyncExecutor;
+    private volatile Executor callbackExecutor;
+    private final Set<String> timedOutModules;
+    private final ModuleServiceRegistry services;
+    private final ModuleEventBus eventBus;
+    private final ModuleScheduler scheduler;
+    private final ModuleResourceSampler resourceSampler;
 
     public SimpleModuleManager(ModuleLoaderFactory factory) {
+        this(factory, null);
+    }
+
+    /**
+     * @param executor 并行加载和启用模块的执行器, 为 null 则在调用线程中串行执行
+     */
+    public SimpleModuleManager(ModuleLoaderFactory factory, Executor executor) {
         this.loaderFactory = factory;
-        this.modules = new ArrayList<>();
-        this.lookupNames = new HashMap<>();
+        this.executor = executor;
+        this.registry = ModuleRegistry.EMPTY;
+        this.inFlight = new ConcurrentHashMap<>();
+        this.moduleLocks = new ConcurrentHashMap<>();
+        this.asyncExecutor = ForkJoinPool.commonPool();
+        this.timedOutModules = ConcurrentHashMap.newKeySet();
+        this.services = new ModuleServiceRegistry();
+        this.eventBus = new ModuleEventBus();
+        this.scheduler = new ModuleScheduler();
+        this.resourceSampler = factory.getLoader() instanceof ModuleResourceResolver
+                ? new ModuleResourceSampler((ModuleResourceResolver) factory.getLoader())
+                : null;
+        factory.getLoader().addLifecycleListener(scheduler); // 先停止任务再注销服务和事件
+        factory.getLoader().addLifecycleListener(services);
+        factory.getLoader().addLifecycleListener(eventBus);
+        if(resourceSampler != null)
+            factory.getLoader().addLifecycleListener(resourceSampler);
+        if(factory.getLoader() instanceof ModuleLoaderBase)
+            ((ModuleLoaderBase) factory.getLoader()).setManager(this);
+    }
+
+    protected final Executor getExecutor() {
+        return executor;
+    }
+
+    public Executor getAsyncExecutor() {
+        return asyncExecutor;
+    }
+
+    /**
+     * 设置执行异步操作的执行器, 默认为 {@link ForkJoinPool#commonPool()}.
+     * 异步操作中会等待并行加载的任务, 因此不要使用与并行加载相同的固定大小线程池.
+     */
+    public void setAsyncExecutor(Executor asyncExecutor) {
+        Validate.notNull(asyncExecutor, "异步执行器对象不能为 null 值.");
+        this.asyncExecutor = asyncExecutor;
+    }
+
+    public Executor getCallbackExecutor() {
+        return callbackExecutor;
+    }
+
+    /**
+     * 设置完成异步操作结果的执行器, 例如服务器主线程的执行器. 为 null 时在执行操作的线程中完成.
+     */
+    public void setCallbackExecutor(Executor callbackExecutor) {
+        this.callbackExecutor = callbackExecutor;
     }
 
     @Override
@@ -47,29 +128,76 @@ public class SimpleModuleManager extends ModuleManagerBase {
     }
 
     @Override
-    public synchronized Module getModule(String name) {
+    public ModuleServiceRegistry getServices() {
+        return services;
+    }
+
+    @Override
+    public ModuleEventBus getEventBus() {
+        return eventBus;
+    }
+
+    @Override
+    public ModuleScheduler getScheduler() {
+        return scheduler;
+    }
+
+    @Override
+    public ModuleResourceSampler getResourceSampler() {
+        return resourceSampler;
+    }
+
+    @Override
+    public Module getModule(String name) {
         Validate.notNull(name, "模块名字对象不能为 null 值.");
-        return lookupNames.get(name.replace(" ", "_"));
+        Module module = registry.get(name.replace(' ', '_'));
+        if(module instanceof LazyModule)
+            module = activate((LazyModule) module);
+        return module;
+    }
+
+    /** 实际加载延迟加载的模块并在注册表中替换它, 失败时返回 null */
+    private Module activate(LazyModule lazyModule) {
+        Module module;
+        try {
+            module = lazyModule.activate();
+        } catch (Exception e) {
+            handlerException(e);
+            return null;
+        }
+        synchronized (this) {
+            int index = registry.indexOf(lazyModule);
+            if(index != -1 && registry.get(index) == lazyModule)
+                registry = registry.set(index, module, registry.getFile(index));
+        }
+        return module;
     }
 
     @Override
-    public synchronized Module[] getModules() {
-        return modules.toArray(new Module[modules.size()]);
+    public Module[] getModules() {
+        return registry.toArray();
+    }
+
+    /** 直接返回注册表快照中的列表, 不会复制 */
+    @Override
+    public List<Module> getModuleList() {
+        return registry.asList();
     }
 
     @Override
-    public synchronized int getModuleSize() {
-        return modules.size();
+    public int getModuleSize() {
+        return registry.size();
     }
 
     @Override
     public boolean isEnable(String name) {
-        return isEnable(getModule(name));
+        Validate.notNull(name, "模块名字对象不能为 null 值.");
+        return isEnable(registry.get(name.replace(' ', '_'))); // 不会实际加载延迟加载的模块
     }
 
     @Override
     public boolean isEnable(Module module) {
-        return module != null && modules.contains(module) && module.isEnable();
+        return module != null && module.isEnable() && registry.contains(module);
     }
 
     @Override
@@ -78,12 +206,25 @@ public class SimpleModuleManager extends ModuleManagerBase {
         ModuleLoader loader = loaderFactory.validate(moduleFile);
         if(loader == null)
             return null;
-        Module module = loader.loadModule(moduleFile);
-        modules.add(module);
-        lookupNames.put(module.getDescription().getName(), module);
+        Module module = loader.loadModule(moduleFile, this::checkDepend); // 依赖检查复用加载时读取的描述
+        registerModule(module, moduleFile);
         return module;
     }
 
+    private synchronized void registerModule(Module module, File moduleFile) {
+        registry = registry.add(module, moduleFile);
+    }
+
+    private synchronized void unregisterModule(Module module) {
+        registry = registry.remove(module);
+    }
+
+    private synchronized void checkDepend(ModuleDescription description) throws InvalidModuleException {
+        for(String depend : description.getDepend())
+            if(!registry.contains(depend))
+                throw new InvalidModuleException("模块 '" + description.getName() + "' 缺少依赖模块 '" + depend + "'.");
+    }
+
     @Override
     public Module[] loadModules(File rootDir) {
         Validate.notNull(rootDir, "模块文件目录对象不能为 null 值.");
@@ -91,59 +232,522 @@ public class SimpleModuleManager extends ModuleManagerBase {
         File[] moduleFiles = rootDir.listFiles();
         if(moduleFiles == null || moduleFiles.length <= 0)
             return new Module[0];
-        List<Module> modules = new ArrayList<>();
+        Arrays.sort(moduleFiles); // 保证注册顺序与文件系统的列出顺序无关
+        List<ModuleCandidate> candidates = new ArrayList<>(moduleFiles.length);
         for(File moduleFile : moduleFiles) {
-            Module module = null;
+            ModuleLoader loader = loaderFactory.validate(moduleFile);
+            if(loader != null)
+                candidates.add(new ModuleCandidate(moduleFile, loader));
+        }
+        List<ModuleDescription> descriptions = execute(candidates, candidate -> candidate.loader.getDescription(candidate.file));
+        List<ModuleCandidate> described = new ArrayList<>(candidates.size());
+        for(int i = 0; i < candidates.size(); i++) {
+            ModuleCandidate candidate = candidates.get(i);
+            candidate.description = descriptions.get(i);
+            if(candidate.description != null)
+                described.add(candidate);
+        }
+        Set<String> provided = registry.names();
+        Map<ModuleCandidate, ModuleException> failures = new LinkedHashMap<>();
+        List<List<ModuleCandidate>> levels = ModuleDependencySorter.sort(described, candidate -> candidate.description, provided, failures);
+        for(ModuleException e : failures.values())
+            handlerException(e);
+        // 同一层的模块之间没有依赖, 可以同时构建类加载器; 每层加载完毕后按顺序发布到管理器
+        List<Module> modules = new ArrayList<>();
+        for(List<ModuleCandidate> level : levels) {
+            List<Module> loaded = execute(level, candidate -> {
+                checkDepend(candidate.description);
+                return candidate.loader.loadModule(candidate.file);
+            });
+            synchronized (this) {
+                ModuleRegistry registry = this.registry;
+                for(int i = 0; i < level.size(); i++) {
+                    Module module = loaded.get(i);
+                    if(module == null)
+                        continue;
+                    registry = registry.add(module, level.get(i).file);
+                    modules.add(module);
+                }
+                this.registry = registry;
+            }
+        }
+        return modules.toArray(new Module[modules.size()]);
+    }
+
+    @Override
+    public synchronized Module reloadModule(Module module) throws InvalidModuleException, InvalidModuleDescriptionException {
+        Validate.notNull(module, "模块对象不能为 null 值.");
+        if(!registry.contains(module))
+            throw new IllegalArgumentException("模块 '" + module.getName() + "' 没有被此管理器加载.");
+        // 依赖此模块的模块持有旧的类, 需要一起重新加载
+        List<Module> affected = getDependents(module);
+        Set<Module> enabled = new HashSet<>();
+        for(int i = affected.size() - 1; i >= 0; i--) {
+            Module target = affected.get(i);
+            if(target.isEnable())
+                enabled.add(target);
+            disableModule0(target);
+        }
+        for(int i = affected.size() - 1; i >= 0; i--) {
+            Module target = affected.get(i);
             try {
-                module = loadModule(moduleFile);
-            } catch (ModuleException e) {
+                target.getLoader().unloadModule(target);
+            } catch (Exception e) {
                 handlerException(e);
             }
-            if(module == null)
+        }
+        Module reloaded = null;
+        ModuleException failure = null;
+        for(Module target : affected) {
+            int index = registry.indexOf(target);
+            File moduleFile = registry.getFile(index);
+            Module module0 = null;
+            try {
+                ModuleLoader loader = loaderFactory.validate(moduleFile);
+                if(loader == null || !moduleFile.exists())
+                    throw new InvalidModuleException("模块 '" + target.getName() + "' 的文件已经不可用.");
+                module0 = loader.loadModule(moduleFile, this::checkDepend);
+            } catch (ModuleException e) {
+                if(target == module)
+                    failure = e;
+                else
+                    handlerException(e);
+                registry = registry.remove(target);
                 continue;
-            modules.add(module);
+            }
+            // 在原来的位置替换, 保持注册顺序
+            registry = registry.set(index, module0, moduleFile);
+            if(target == module)
+                reloaded = module0;
+            if(enabled.contains(target)) try {
+                enableModule0(module0);
+            } catch (Exception e) {
+                handlerException(e);
+            }
         }
-        return modules.toArray(new Module[modules.size()]);
+        unloadTimedOut();
+        if(failure instanceof InvalidModuleDescriptionException)
+            throw (InvalidModuleDescriptionException) failure;
+        if(failure != null)
+            throw failure instanceof InvalidModuleException ? (InvalidModuleException) failure : new InvalidModuleException(failure);
+        return reloaded;
+    }
+
+    @Override
+    public synchronized void unloadModule(Module module) {
+        Validate.notNull(module, "模块对象不能为 null 值.");
+        if(!registry.contains(module))
+            throw new IllegalArgumentException("模块 '" + module.getName() + "' 没有被此管理器加载.");
+        List<Module> affected = getDependents(module);
+        for(int i = affected.size() - 1; i >= 0; i--)
+            disableModule0(affected.get(i));
+        for(int i = affected.size() - 1; i >= 0; i--) {
+            Module target = affected.get(i);
+            try {
+                target.getLoader().unloadModule(target);
+            } catch (Exception e) {
+                handlerException(e);
+            }
+            unregisterModule(target);
+        }
+    }
+
+    /**
+     * 监视模块目录, 对新增、修改和删除的模块文件进行增量的加载、重新加载和卸载.
+     *
+     * @param rootDir 模块文件目录
+     * @param debounceMillis 文件在此时间内没有再变化才会被处理, 避免处理复制到一半的文件
+     */
+    public ModuleDirectoryWatcher watchModules(File rootDir, long debounceMillis) throws IOException {
+        Validate.notNull(rootDir, "模块文件目录对象不能为 null 值.");
+        Validate.isTrue(rootDir.isDirectory(), "模块文件目录对象并不是目录文件.");
+        Validate.isTrue(debounceMillis >= 0, "防抖时间不能小于 0.");
+        ModuleDirectoryWatcher watcher = new ModuleDirectoryWatcher(this, rootDir, debounceMillis);
+        watcher.start();
+        return watcher;
+    }
+
+    Module getModule(File moduleFile) {
+        ModuleRegistry registry = this.registry;
+        int index = registry.indexOf(moduleFile);
+        return index != -1 ? registry.get(index) : null;
+    }
+
+    /** 模块文件没有被加载, 或者大小或修改时间与加载时不同 */
+    boolean isModuleFileChanged(File moduleFile) {
+        ModuleRegistry registry = this.registry;
+        int index = registry.indexOf(moduleFile);
+        return index == -1 || registry.isFileChanged(index);
+    }
+
+    File[] getModuleFiles() {
+        return registry.toFileArray();
+    }
+
+    boolean isModuleFile(File moduleFile) {
+        return loaderFactory.validate(moduleFile) != null;
+    }
+
+    /** 获取模块以及所有直接或间接依赖它的模块, 按注册顺序排列 */
+    private List<Module> getDependents(Module module) {
+        List<Module> modules = registry.asList();
+        Set<String> names = new HashSet<>();
+        names.add(module.getName());
+        boolean changed = true;
+        while(changed) {
+            changed = false;
+            for(Module other : modules) {
+                if(names.contains(other.getName()))
+                    continue;
+                ModuleDescription description = other.getDescription();
+                if(containsAny(description.getDepend(), names) || containsAny(description.getSoftDepend(), names) || isLoadBefore(other, names))
+                    changed |= names.add(other.getName());
+            }
+        }
+        List<Module> dependents = new ArrayList<>();
+        for(Module other : modules)
+            if(names.contains(other.getName()))
+                dependents.add(other);
+        return dependents;
+    }
+
+    private boolean isLoadBefore(Module module, Set<String> names) {
+        for(String name : names) {
+            Module other = registry.get(name);
+            if(other != null && other.getDescription().getLoadBefore().contains(module.getName()))
+                return true;
+        }
+        return false;
+    }
+
+    private static boolean containsAny(List<String> list, Set<String> names) {
+        for(String name : list)
+            if(names.contains(name))
+                return true;
+        return false;
     }
 
     @Override
     public void enableModule(Module module) {
         if(module != null && !module.isEnable()) try {
-            module.getLoader().enableModule(module);
+            enableModule0(module);
         } catch (Exception e) {
             handlerException(e);
         }
+        unloadTimedOut();
+    }
+
+    private void enableModule0(Module module) throws ModuleException {
+        for(String depend : module.getDescription().getDepend())
+            if(!isEnable(getModule(depend))) // 依赖的延迟加载模块在此时实际加载
+                throw new ModuleException("模块 '" + module.getName() + "' 的依赖模块 '" + depend + "' 没有启用.");
+        synchronized (getModuleLock(module)) { // 同一个模块的启用与关闭互斥, 在锁内重新检查状态
+            if(!module.isEnable()) try {
+                module.getLoader().enableModuleTimed(module);
+            } catch (ModuleTimeoutException e) {
+                addTimedOut(module, e);
+                throw e;
+            }
+        }
     }
 
     @Override
     public void enableModules() {
-        Module[] modules = getModules();
-        for(int i = 0; i < modules.length; i++)
-            enableModule(modules[i]);
+        for(List<Module> level : sortModules(true))
+            execute(level, module -> {
+                if(!module.isEnable())
+                    enableModule0(module);
+                return null;
+            });
+        unloadTimedOut();
     }
 
     @Override
     public void disableModule(Module module) {
-        if(module != null && module.isEnable()) try {
-            module.getLoader().disableModule(module);
+        disableModule0(module);
+        unloadTimedOut();
+    }
+
+    private void disableModule0(Module module) {
+        if(module != null && (module.isEnable() || module instanceof LazyModule)) try {
+            synchronized (getModuleLock(module)) {
+                if(module.isEnable() || module instanceof LazyModule)
+                    module.getLoader().disableModuleTimed(module);
+            }
+        } catch (ModuleTimeoutException e) {
+            addTimedOut(module, e);
+            handlerException(e);
         } catch (Exception e) {
             handlerException(e);
         }
     }
 
+    /** 记录按 {@link ModuleTimeoutPolicy#UNLOAD} 策略超时的模块, 在这批启用或关闭结束后卸载 */
+    private void addTimedOut(Module module, ModuleTimeoutException e) {
+        if(e.getPolicy() == ModuleTimeoutPolicy.UNLOAD)
+            timedOutModules.add(module.getName());
+    }
+
+    /**
+     * 模块启用与关闭使用的锁. 不使用模块对象自身的监视器, 否则 onEnable 和 onDisable 中调用模块的同步方法时会等待到超时.
+     */
+    private Object getModuleLock(Module module) {
+        Object lock = moduleLocks.get(module.getName());
+        if(lock == null)
+            lock = moduleLocks.computeIfAbsent(module.getName(), key -> new Object());
+        return lock;
+    }
+
+    /**
+     * 卸载按 {@link ModuleTimeoutPolicy#UNLOAD} 策略超时的模块. 只在一批启用或关闭结束后由调用线程执行,
+     * 执行器的工作线程不获取管理器锁, 否则会与持有锁等待这批任务的线程死锁.
+     */
+    private void unloadTimedOut() {
+        if(timedOutModules.isEmpty())
+            return;
+        synchronized (this) {
+            for(Iterator<String> iterator = timedOutModules.iterator(); iterator.hasNext();) {
+                Module module = registry.get(iterator.next());
+                iterator.remove();
+                if(module != null) // 可能已经作为依赖它的模块被卸载
+                    unloadModule(module);
+            }
+        }
+    }
+
     @Override
     public void disableModules() {
-        Module[] modules = getModules();
-        for(int i = modules.length - 1; i >= 0; i--)
-            disableModule(modules[i]);
+        List<List<Module>> levels = sortModules(false);
+        for(int i = levels.size() - 1; i >= 0; i--)
+            execute(levels.get(i), module -> {
+                disableModule0(module);
+                return null;
+            });
+        unloadTimedOut();
+    }
+
+    @Override
+    public CompletableFuture<Module> loadModuleAsync(File moduleFile) {
+        Validate.notNull(moduleFile, "模块文件对象不能为 null 值.");
+        return submit(moduleFile.getAbsolutePath(), () -> loadModule(moduleFile));
+    }
+
+    @Override
+    public CompletableFuture<Module[]> loadModulesAsync(File rootDir) {
+        return submit(null, () -> loadModules(rootDir));
+    }
+
+    @Override
+    public CompletableFuture<Module> reloadModuleAsync(Module module) {
+        Validate.notNull(module, "模块对象不能为 null 值.");
+        return submit(module.getName(), () -> reloadModule(module));
+    }
+
+    @Override
+    public CompletableFuture<Module> unloadModuleAsync(Module module) {
+        Validate.notNull(module, "模块对象不能为 null 值.");
+        return submit(module.getName(), () -> {
+            unloadModule(module);
+            return module;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Module> enableModuleAsync(Module module) {
+        Validate.notNull(module, "模块对象不能为 null 值.");
+        return submit(module.getName(), () -> {
+            try {
+                enableModule0(module);
+            } finally {
+                unloadTimedOut();
+            }
+            if(!module.isEnable() && !(module instanceof LazyModule))
+                throw new ModuleException("模块 '" + module.getName() + "' 启用失败.");
+            return module;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> enableModulesAsync() {
+        return submit(null, () -> {
+            enableModules();
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Module> disableModuleAsync(Module module) {
+        Validate.notNull(module, "模块对象不能为 null 值.");
+        return submit(module.getName(), () -> {
+            disableModule(module);
+            return module;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> disableModulesAsync() {
+        return submit(null, () -> {
+            disableModules();
+            return null;
+        });
+    }
+
+    /**
+     * 在异步执行器中执行任务. 相同键的任务排在前一个任务完成之后执行, 键为 null 时使用管理器级别的队列.
+     */
+    private <T> CompletableFuture<T> submit(String key, Callable<T> task) {
+        String queue = key != null ? key : "";
+        CompletableFuture<T> result = new CompletableFuture<>();
+        CompletableFuture<Void> current;
+        synchronized (inFlight) {
+            CompletableFuture<?> previous = inFlight.get(queue);
+            CompletableFuture<?> start = previous != null ? previous : CompletableFuture.completedFuture(null);
+            current = start.handle((value, error) -> null).thenCompose(value -> executeAsync(task, result));
+            inFlight.put(queue, current);
+        }
+        current.whenComplete((value, error) -> inFlight.remove(queue, current));
+        return result;
+    }
+
+    /**
+     * 在异步执行器中执行任务并完成结果, 返回任务结束时完成的队列节点. 执行器拒绝任务时结果以拒绝的异常完成.
+     */
+    private <T> CompletableFuture<Void> executeAsync(Callable<T> task, CompletableFuture<T> result) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        try {
+            asyncExecutor.execute(() -> {
+                T taskResult = null;
+                Throwable failure = null;
+                try {
+                    taskResult = task.call();
+                } catch (Throwable e) {
+                    failure = e;
+                }
+                try {
+                    complete(result, taskResult, failure);
+                } finally {
+                    done.complete(null);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            complete(result, null, e);
+            done.complete(null);
+        }
+        return done;
+    }
+
+    private <T> void complete(CompletableFuture<T> result, T value, Throwable failure) {
+        Executor callbackExecutor = this.callbackExecutor;
+        Runnable completion = () -> {
+            if(failure != null)
+                result.completeExceptionally(failure);
+            else
+                result.complete(value);
+        };
+        if(callbackExecutor == null)
+            completion.run();
+        else try {
+            callbackExecutor.execute(completion);
+        } catch (Exception e) {
+            // 回调执行器已经关闭时直接完成
+            completion.run();
+        }
+    }
+
+    /**
+     * 按依赖关系将已注册的模块分层. 启用时无法排序的模块会被报告并跳过, 关闭时则放在最先关闭的一层.
+     */
+    private List<List<Module>> sortModules(boolean enable) {
+        Map<Module, ModuleException> failures = new LinkedHashMap<>();
+        List<List<Module>> levels = ModuleDependencySorter.sort(registry.asList(), Module::getDescription, Collections.<String>emptySet(), failures);
+        if(enable) {
+            for(ModuleException e : failures.values())
+                handlerException(e);
+        } else if(!failures.isEmpty()) {
+            levels.add(new ArrayList<>(failures.keySet()));
+        }
+        return levels;
+    }
+
+    /**
+     * 对每个节点执行任务, 存在执行器时并行执行. 返回与节点顺序一致的结果, 失败的任务结果为 null.
+     */
+    private <T, R> List<R> execute(List<T> nodes, ModuleTask<T, R> task) {
+        List<R> results = new ArrayList<>(nodes.size());
+        if(executor == null || nodes.size() <= 1) {
+            for(T node : nodes) {
+                R result = null;
+                try {
+                    result = task.run(node);
+                } catch (Exception e) {
+                    handlerException(e);
+                }
+                results.add(result);
+            }
+            return results;
+        }
+        List<CompletableFuture<R>> futures = new ArrayList<>(nodes.size());
+        for(T node : nodes)
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return task.run(node);
+                } catch (Exception e) {
+                    throw new CompletionException(e);
+                }
+            }, executor));
+        for(CompletableFuture<R> future : futures) {
+            R result = null;
+            try {
+                result = future.join();
+            } catch (CompletionException e) {
+                handlerException(e.getCause() instanceof Exception ? (Exception) e.getCause() : e);
+            }
+            results.add(result);
+        }
+        return results;
+    }
+
+    @FunctionalInterface
+    private interface ModuleTask<T, R> {
+
+        R run(T node) throws Exception;
+    }
+
+    private static final class ModuleCandidate {
+
+        private final File file;
+        private final ModuleLoader loader;
+        private ModuleDescription description;
+
+        private ModuleCandidate(File file, ModuleLoader loader) {
+            this.file = file;
+            this.loader = loader;
+        }
     }
 
     @Override
     public void clearModules() {
         synchronized (this) {
             disableModules();
-            modules.clear();
-            lookupNames.clear();
+            ModuleRegistry registry = this.registry;
+            for(int i = registry.size() - 1; i >= 0; i--) {
+                Module module = registry.get(i);
+                try {
+                    module.getLoader().unloadModule(module);
+                } catch (Exception e) {
+                    handlerException(e);
+                }
+            }
+            this.registry = ModuleRegistry.EMPTY;
         }
     }
+
+    /**
+     * 清除所有模块并关闭调度器的线程. 关闭之后不能再提交任务.
+     */
+    @Override
+    public void close() {
+        clearModules();
+        scheduler.shutdown();
+    }
 }
@@ -0,0 +1,283 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.minecraft.moonlake.module.event;
+
+import com.minecraft.moonlake.module.Module;
+import com.minecraft.moonlake.module.ModuleLifecycleListener;
+import com.minecraft.moonlake.validate.Validate;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * 模块之间的事件总线. 每种事件类型的处理器在第一次发布时按优先级排好并缓存为数组, 注册变化后重新建立.
+ * 标注的处理方法通过 LambdaMetafactory 生成调用类, 无法生成时使用 MethodHandle, 不使用反射调用. 模块关闭时自动注销它的处理器.
+ */
+public final class ModuleEventBus implements ModuleLifecycleListener {
+
+    private static final Method PRIVATE_LOOKUP_IN;
+    private static final MethodType EXECUTOR_TYPE = MethodType.methodType(void.class, Object.class, ModuleEvent.class);
+    private static final Comparator<RegisteredHandler> ORDER = Comparator
+            .comparing((RegisteredHandler handler) -> handler.priority)
+            .thenComparingLong(handler -> handler.sequence);
+
+    static {
+        Method privateLookupIn = null;
+        try { // Java 9+
+            privateLookupIn = MethodHandles.class.getMethod("privateLookupIn", Class.class, MethodHandles.Lookup.class);
+        } catch (NoSuchMethodException e) {
+        }
+        PRIVATE_LOOKUP_IN = privateLookupIn;
+    }
+
+    private final List<RegisteredHandler> handlers; // 只在持有锁时修改
+    private final AtomicLong sequence;
+    private volatile Map<Class<?>, RegisteredHandler[]> baked;
+
+    public ModuleEventBus() {
+        this.handlers = new ArrayList<>();
+        this.sequence = new AtomicLong();
+        this.baked = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * 注册监听器中所有标注了 {@link ModuleEventHandler} 的方法, 包括父类中声明的方法.
+     *
+     * @param owner 所属模块, 模块关闭时自动注销
+     */
+    public void register(Module owner, ModuleEventListener listener) {
+        register(owner, listener, null);
+    }
+
+    /**
+     * 注册监听器, 并使用监听器类中的 {@code MethodHandles.lookup()} 生成调用. 监听器类自己的 Lookup 在所有 Java 版本上都可以生成调用类,
+     * 否则在 Java 14+ 和对事件总线不可见的模块类上只能使用 MethodHandle 调用.
+     *
+     * @param lookup 在监听器类中获取的 Lookup, 可以为 null
+     */
+    public void register(Module owner, ModuleEventListener listener, MethodHandles.Lookup lookup) {
+        Validate.notNull(owner, "模块对象不能为 null 值.");
+        Validate.notNull(listener, "事件监听器对象不能为 null 值.");
+        List<RegisteredHandler> registered = new ArrayList<>();
+        for(Class<?> clazz = listener.getClass(); clazz != null && clazz != Object.class; clazz = clazz.getSuperclass()) {
+            for(Method method : clazz.getDeclaredMethods()) {
+                ModuleEventHandler annotation = method.getAnnotation(ModuleEventHandler.class);
+                if(annotation == null || method.isBridge() || method.isSynthetic())
+                    continue;
+                if(Modifier.isStatic(method.getModifiers()) || method.getParameterCount() != 1 || !ModuleEvent.class.isAssignableFrom(method.getParameterTypes()[0]))
+                    throw new IllegalArgumentException("事件处理方法 '" + method + "' 必须是只有一个事件参数的实例方法.");
+                ModuleEventExecutor executor;
+                try {
+                    executor = createExecutor(method, lookup);
+                } catch (Throwable e) {
+                    throw new IllegalArgumentException("无法为事件处理方法 '" + method + "' 生成调用.", e);
+                }
+                registered.add(new RegisteredHandler(owner, listener, method.getParameterTypes()[0], annotation.priority(), annotation.ignoreCancelled(), executor, sequence.incrementAndGet()));
+            }
+        }
+        addHandlers(registered);
+    }
+
+    /**
+     * 注册单个事件处理器.
+     *
+     * @param owner 所属模块, 模块关闭时自动注销
+     * @return 用于注销的句柄对象
+     */
+    public <E extends ModuleEvent> Object register(Module owner, Class<E> eventType, ModuleEventPriority priority, boolean ignoreCancelled, Consumer<? super E> handler) {
+        Validate.notNull(owner, "模块对象不能为 null 值.");
+        Validate.notNull(eventType, "事件类型对象不能为 null 值.");
+        Validate.notNull(priority, "优先级对象不能为 null 值.");
+        Validate.notNull(handler, "事件处理器对象不能为 null 值.");
+        ModuleEventExecutor executor = (listener, event) -> handler.accept(eventType.cast(event));
+        List<RegisteredHandler> registered = new ArrayList<>(1);
+        registered.add(new RegisteredHandler(owner, handler, eventType, priority, ignoreCancelled, executor, sequence.incrementAndGet()));
+        addHandlers(registered);
+        return handler;
+    }
+
+    /** 注销监听器或 {@link #register(Module, Class, ModuleEventPriority, boolean, Consumer)} 返回的句柄对象的所有处理器 */
+    public void unregister(Object listener) {
+        Validate.notNull(listener, "事件监听器对象不能为 null 值.");
+        removeHandlers(handler -> handler.listener == listener);
+    }
+
+    public void unregisterAll(Module owner) {
+        Validate.notNull(owner, "模块对象不能为 null 值.");
+        removeHandlers(handler -> handler.owner == owner);
+    }
+
+    /**
+     * 在当前线程中按优先级调用事件的所有处理器. 处理器抛出的异常记录到所属模块的日志, 不会中断其他处理器.
+     */
+    public <E extends ModuleEvent> E post(E event) {
+        Validate.notNull(event, "事件对象不能为 null 值.");
+        Map<Class<?>, RegisteredHandler[]> baked = this.baked;
+        RegisteredHandler[] handlers = baked.get(event.getClass());
+        if(handlers == null) {
+            handlers = bake(event.getClass());
+            baked.put(event.getClass(), handlers); // 注册在此期间变化时写入的是已经被替换的缓存, 不会生效
+        }
+        Cancellable cancellable = event instanceof Cancellable ? (Cancellable) event : null;
+        for(RegisteredHandler handler : handlers) {
+            if(handler.ignoreCancelled && cancellable != null && cancellable.isCancelled())
+                continue;
+            try {
+                handler.executor.execute(handler.listener, event);
+            } catch (Throwable e) {
+                Logger logger = handler.owner.getLogger();
+                logger.log(Level.SEVERE, "处理事件 " + event.getEventName() + " 时发生异常.", e);
+            }
+        }
+        return event;
+    }
+
+    /** 是否有处理器会处理此类型的事件, 用于在构建开销较大的事件前检查 */
+    public boolean hasHandlers(Class<? extends ModuleEvent> eventType) {
+        Validate.notNull(eventType, "事件类型对象不能为 null 值.");
+        RegisteredHandler[] handlers = baked.get(eventType);
+        if(handlers == null) {
+            handlers = bake(eventType);
+            baked.put(eventType, handlers);
+        }
+        return handlers.length > 0;
+    }
+
+    @Override
+    public void onModuleDisabled(Module module) {
+        unregisterAll(module);
+        // 没有处理器的事件类型也会被缓存, 移除模块自己的事件类型以免引用它的类加载器
+        ClassLoader classLoader = module.getClass().getClassLoader();
+        synchronized (handlers) {
+            if(baked.keySet().stream().anyMatch(eventType -> eventType.getClassLoader() == classLoader)) {
+                Map<Class<?>, RegisteredHandler[]> retained = new ConcurrentHashMap<>(baked);
+                retained.keySet().removeIf(eventType -> eventType.getClassLoader() == classLoader);
+                baked = retained;
+            }
+        }
+    }
+
+    private RegisteredHandler[] bake(Class<?> eventClass) {
+        List<RegisteredHandler> matched = new ArrayList<>();
+        synchronized (handlers) {
+            for(RegisteredHandler handler : handlers)
+                if(handler.eventType.isAssignableFrom(eventClass))
+                    matched.add(handler);
+        }
+        matched.sort(ORDER);
+        return matched.toArray(new RegisteredHandler[matched.size()]);
+    }
+
+    private void addHandlers(List<RegisteredHandler> registered) {
+        if(registered.isEmpty())
+            return;
+        synchronized (handlers) {
+            handlers.addAll(registered);
+            baked = new ConcurrentHashMap<>();
+        }
+    }
+
+    private void removeHandlers(Predicate<RegisteredHandler> filter) {
+        synchronized (handlers) {
+            if(handlers.removeIf(filter))
+                baked = new ConcurrentHashMap<>();
+        }
+    }
+
+    /**
+     * 生成调用事件处理方法的实现. 生成的类定义在 Lookup 所在类的类加载器中, 需要对监听器类有完全访问权限的 Lookup:
+     * 优先使用监听器提供的 Lookup, 其次是 privateLookupIn (Java 9 ~ 13), Java 8 中公开并且对事件总线的类加载器可见的类使用事件总线的 Lookup.
+     * 都不可用时使用 MethodHandle.
+     */
+    private static ModuleEventExecutor createExecutor(Method method, MethodHandles.Lookup provided) throws Throwable {
+        Class<?> listenerClass = method.getDeclaringClass();
+        MethodHandles.Lookup lookup = provided != null && provided.lookupClass() == listenerClass && (provided.lookupModes() & MethodHandles.Lookup.PRIVATE) != 0
+                ? provided
+                : lookup(listenerClass, method);
+        if(lookup != null) try {
+            MethodHandle target = lookup.unreflect(method);
+            CallSite site = LambdaMetafactory.metafactory(lookup, "execute",
+                    MethodType.methodType(ModuleEventExecutor.class),
+                    EXECUTOR_TYPE,
+                    target,
+                    MethodType.methodType(void.class, listenerClass, method.getParameterTypes()[0]));
+            return (ModuleEventExecutor) site.getTarget().invokeExact();
+        } catch (Exception | LinkageError e) {
+            // 使用 MethodHandle
+        }
+        method.setAccessible(true);
+        MethodHandle handle = MethodHandles.lookup().unreflect(method).asType(EXECUTOR_TYPE);
+        return (listener, event) -> {
+            handle.invokeExact(listener, event);
+        };
+    }
+
+    private static MethodHandles.Lookup lookup(Class<?> listenerClass, Method method) {
+        if(PRIVATE_LOOKUP_IN != null) try {
+            return (MethodHandles.Lookup) PRIVATE_LOOKUP_IN.invoke(null, listenerClass, MethodHandles.lookup());
+        } catch (Exception e) {
+            return null;
+        }
+        if(!Modifier.isPublic(listenerClass.getModifiers()) || !Modifier.isPublic(method.getModifiers()))
+            return null;
+        try {
+            ClassLoader classLoader = ModuleEventBus.class.getClassLoader();
+            if(Class.forName(listenerClass.getName(), false, classLoader) == listenerClass
+                    && Class.forName(method.getParameterTypes()[0].getName(), false, classLoader) == method.getParameterTypes()[0])
+                return MethodHandles.lookup();
+        } catch (ClassNotFoundException e) {
+        }
+        return null;
+    }
+
+    private static final class RegisteredHandler {
+
+        private final Module owner;
+        private final Object listener;
+        private final Class<?> eventType;
+        private final ModuleEventPriority priority;
+        private final boolean ignoreCancelled;
+        private final ModuleEventExecutor executor;
+        private final long sequence;
+
+        private RegisteredHandler(Module owner, Object listener, Class<?> eventType, ModuleEventPriority priority, boolean ignoreCancelled, ModuleEventExecutor executor, long sequence) {
+            this.owner = owner;
+            this.listener = listener;
+            this.eventType = eventType;
+            this.priority = priority;
+            this.ignoreCancelled = ignoreCancelled;
+            this.executor = executor;
+            this.sequence = sequence;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.minecraft.moonlake.module.exception;
+
+import com.minecraft.moonlake.module.ModuleTimeoutPolicy;
+
+/**
+ * 模块的启用或关闭超过时间预算. 异常的堆栈为超时时执行回调的线程的堆栈.
+ */
+public class ModuleTimeoutException extends ModuleException {
+
+    private static final long serialVersionUID = -6043372405617412520L;
+
+    private final ModuleTimeoutPolicy policy;
+
+    public ModuleTimeoutException(String message, ModuleTimeoutPolicy policy) {
+        super(message);
+        this.policy = policy;
+    }
+
+    public ModuleTimeoutPolicy getPolicy() {
+        return policy;
+    }
+}
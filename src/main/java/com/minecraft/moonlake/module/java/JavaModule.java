@@ -22,6 +22,8 @@ import com.minecraft.moonlake.module.ModuleBase;
 import com.minecraft.moonlake.module.ModuleDescription;
 import com.minecraft.moonlake.module.ModuleLoader;
 import com.minecraft.moonlake.module.ModuleLogger;
+import com.minecraft.moonlake.module.ModuleManager;
+import com.minecraft.moonlake.module.scheduler.ModuleScheduler;
 import com.minecraft.moonlake.validate.Validate;
 
 import java.io.File;
@@ -30,7 +32,7 @@ import java.util.logging.Logger;
 public abstract class JavaModule extends ModuleBase {
 
     private File moduleFile;
-    private boolean isEnable;
+    private volatile boolean isEnable; // 启用超时时由其他线程修改
     private ModuleLoader loader;
     private ModuleLogger logger;
     private ModuleDescription description;
@@ -85,6 +87,17 @@ public abstract class JavaModule extends ModuleBase {
         return loader;
     }
 
+    /** 加载此模块的模块管理器, 用于获取服务注册表等 */
+    public final ModuleManager getManager() {
+        return loader.getManager();
+    }
+
+    /** 模块管理器的任务调度器, 模块关闭时自动取消此模块的任务. 没有模块管理器时返回 null */
+    public final ModuleScheduler getScheduler() {
+        ModuleManager manager = getManager();
+        return manager != null ? manager.getScheduler() : null;
+    }
+
     @Override
     public final boolean isEnable() {
         return isEnable;
@@ -106,6 +119,11 @@ public abstract class JavaModule extends ModuleBase {
         }
     }
 
+    /** 启用超时后将模块标记为没有启用, 不会调用 onDisable */
+    final void resetEnable() {
+        isEnable = false;
+    }
+
     public static <T extends JavaModule> T getModule(Class<T> clazz) {
         Validate.notNull(clazz, "类对象不能为 null 值.");
         if(!JavaModule.class.isAssignableFrom(clazz))
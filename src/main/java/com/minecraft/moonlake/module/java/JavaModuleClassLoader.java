@@ -20,33 +20,119 @@ package com.minecraft.moonlake.module.java;
 
 import com.minecraft.moonlake.module.ModuleDescription;
 import com.minecraft.moonlake.module.exception.InvalidModuleException;
+import com.minecraft.moonlake.module.metrics.ModuleMetrics;
+import com.minecraft.moonlake.module.metrics.ModulePhase;
 import com.minecraft.moonlake.validate.Validate;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.nio.ByteBuffer;
+import java.security.CodeSigner;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
 
 final class JavaModuleClassLoader extends URLClassLoader {
 
+    static {
+        // 类加载按类名加锁, 不同线程可以同时从同一个模块加载不同的类
+        ClassLoader.registerAsParallelCapable();
+    }
+
+    /** 每个预加载任务至少分到的类数量, 类较少时不值得交给其他线程 */
+    private static final int PRELOAD_BATCH = 16;
+
     private final JavaModuleLoader loader;
     private final Map<String, Class<?>> classes;
+    private final Set<String> entries; // index
+    private final Queue<String> definedClasses; // 训练运行时记录
     private final ModuleDescription description;
+    private final ModuleMetrics metrics;
     private final File moduleFile;
-    private JavaModule moduleInitialize;
+    private final URL url;
+    private volatile JarFile jarFile;
+    private volatile MappedModuleJar mappedJar;
+    private final CodeSource codeSource; // 不签名的映射 Jar 共用
+    private volatile boolean closed;
+    private final boolean verified; // 只从校验过摘要的映射或校验时打开的 Jar 文件读取, 不重新打开文件
+    private final Object jarLock;
+    private final AtomicReference<JavaModule> moduleInitialize;
+    private final URLStreamHandler resourceHandler;
+    private Manifest manifest;
 
     final JavaModule module; // instance
 
-    public JavaModuleClassLoader(JavaModuleLoader loader, ClassLoader parent, ModuleDescription description, File moduleFile) throws InvalidModuleException, MalformedURLException {
+    public JavaModuleClassLoader(JavaModuleLoader loader, ClassLoader parent, ModuleDescription description, File moduleFile, JarFile jarFile, Set<String> entries) throws InvalidModuleException, MalformedURLException {
+        this(loader, parent, description, moduleFile, jarFile, null, entries);
+    }
+
+    /**
+     * @param verifiedJar 已经映射并校验过摘要的模块 Jar 文件, 不为 null 时不会重新打开文件. 签名的 Jar 同时传入校验时打开的 jarFile,
+     *                    类和资源从 jarFile 读取以校验签名, 否则只从映射读取
+     */
+    JavaModuleClassLoader(JavaModuleLoader loader, ClassLoader parent, ModuleDescription description, File moduleFile, JarFile jarFile, MappedModuleJar verifiedJar, Set<String> entries) throws InvalidModuleException, MalformedURLException {
         super(new URL[] { moduleFile.toURI().toURL() }, parent);
         Validate.notNull(loader, "模块加载器不能为 null 值.");
+        Validate.isTrue(jarFile != null || verifiedJar != null, "模块 Jar 文件对象不能为 null 值.");
+        long start = System.nanoTime();
         this.loader = loader;
         this.description = description;
+        this.metrics = loader.getMetrics().getOrCreate(description.getName());
         this.moduleFile = moduleFile;
+        this.url = moduleFile.toURI().toURL();
+        this.codeSource = new CodeSource(url, (CodeSigner[]) null);
         this.classes = new ConcurrentHashMap<>();
+        this.jarFile = jarFile;
+        this.jarLock = new Object();
+        this.moduleInitialize = new AtomicReference<>();
+        this.resourceHandler = new ResourceHandler();
+        this.entries = entries;
+        this.definedClasses = loader.isTraining() ? new ConcurrentLinkedQueue<>() : null;
+        this.verified = verifiedJar != null;
+        try {
+            this.manifest = jarFile != null ? jarFile.getManifest() : readManifest(verifiedJar);
+        } catch (IOException e) {
+            throw new InvalidModuleException("无法读取模块 Jar 文件的 Manifest 清单.", e);
+        }
+        if(verified) {
+            if(jarFile == null)
+                this.mappedJar = verifiedJar;
+        } else if(loader.isMappedJar()) try {
+            MappedModuleJar mappedJar = MappedModuleJar.open(moduleFile);
+            if(!mappedJar.isSigned()) { // 签名需要由 JarFile 校验
+                this.mappedJar = mappedJar;
+                closeJarFile(); // 类和资源都从映射读取, 不再需要文件句柄
+            }
+        } catch (IOException e) {
+            // Zip64 等不支持的格式继续使用 JarFile
+        }
+        long mainStart = System.nanoTime();
+        loader.getMetrics().recordPhase(description.getName(), ModulePhase.CLASS_LOADER, mainStart - start);
 
         try {
             Class<?> mainClass = null;
@@ -62,6 +148,7 @@ final class JavaModuleClassLoader extends URLClassLoader {
                 throw new InvalidModuleException("模块的主类 '" + description.getMain() + "' 没有继承 JavaModule 类.", e);
             }
             this.module = moduleClass.newInstance();
+            loader.getMetrics().recordPhase(description.getName(), ModulePhase.MAIN_CLASS, System.nanoTime() - mainStart);
         } catch (IllegalAccessException e) {
             throw new InvalidModuleException("模块中的构造函数不是 public 修饰.", e);
         } catch (InstantiationException e) {
@@ -69,36 +156,366 @@ final class JavaModuleClassLoader extends URLClassLoader {
         }
     }
 
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+        if(loader.isMissingClass(name))
+            throw new ClassNotFoundException(name);
+        try {
+            return super.loadClass(name, resolve);
+        } catch (ClassNotFoundException e) {
+            loader.setMissingClass(name, this);
+            throw e;
+        }
+    }
+
     @Override
     protected Class<?> findClass(String name) throws ClassNotFoundException {
         return findClass(name, true);
     }
 
+    /**
+     * 查找类. 定义此模块的类时持有此类加载器中该类名的锁, 其他模块通过 {@link JavaModuleLoader#getClassByName(String, JavaModuleClassLoader)}
+     * 查找时也持有同一个锁, 因此同一个类不会被重复定义. 只会在持有请求方的类名锁时获取提供方的类名锁, 而定义类时只需要加载父类型, 因此不会形成环.
+     */
     Class<?> findClass(String name, boolean global) throws ClassNotFoundException {
         Class<?> result = classes.get(name);
-        if(result == null) {
-            if(global)
-                result = loader.getClassByName(name);
+        if(result != null)
+            return result;
+        if(global) {
+            result = loader.getClassByName(name, this);
+            if(result != null) {
+                classes.putIfAbsent(name, result);
+                return result;
+            }
+        }
+        synchronized (getClassLoadingLock(name)) {
+            result = classes.get(name);
             if(result == null) {
-                result = super.findClass(name);
-                if(result != null)
-                    loader.setClass(name, result);
+                result = findLoadedClass(name);
+                if(result == null)
+                    result = findJarClass(name);
+                loader.setClass(name, result);
+                classes.put(name, result);
+            }
+        }
+        return result;
+    }
+
+    private Class<?> findJarClass(String name) throws ClassNotFoundException {
+        if(!entries.contains(name))
+            throw new ClassNotFoundException(name);
+        String path = name.replace('.', '/').concat(".class");
+        Class<?> result;
+        MappedModuleJar mappedJar = this.mappedJar;
+        if(mappedJar != null) {
+            ByteBuffer classBuffer;
+            try {
+                classBuffer = mappedJar.getBuffer(path);
+            } catch (IOException e) {
+                throw new ClassNotFoundException(name, e);
             }
-            classes.put(name, result);
+            if(classBuffer == null)
+                throw new ClassNotFoundException(name);
+            definePackageOf(name);
+            result = defineClass(name, classBuffer, codeSource); // 不压缩的条目直接从映射区域定义
+        } else {
+            JarFile jarFile = getJarFile();
+            JarEntry entry;
+            byte[] classBytes;
+            try {
+                entry = jarFile.getJarEntry(path);
+                if(entry == null)
+                    throw new ClassNotFoundException(name);
+                classBytes = readEntry(jarFile, entry);
+            } catch (IOException e) {
+                throw new ClassNotFoundException(name, e);
+            } catch (IllegalStateException e) {
+                // 卸载时句柄在读取过程中被并发关闭
+                throw new ClassNotFoundException("模块 '" + description.getName() + "' 的 Jar 文件已经被关闭.", e);
+            }
+            definePackageOf(name);
+            CodeSigner[] signers = entry.getCodeSigners();
+            CodeSource source = new CodeSource(url, signers);
+            result = defineClass(name, classBytes, 0, classBytes.length, source);
         }
+        metrics.incrementClassesLoaded();
+        if(definedClasses != null)
+            definedClasses.add(name);
         return result;
     }
 
+    private void definePackageOf(String name) {
+        int dot = name.lastIndexOf('.');
+        if(dot != -1) {
+            String packageName = name.substring(0, dot);
+            if(getPackage(packageName) == null) try {
+                if(manifest != null)
+                    definePackage(packageName, manifest, url);
+                else
+                    definePackage(packageName, null, null, null, null, null, null, null);
+            } catch (IllegalArgumentException e) {
+                if(getPackage(packageName) == null)
+                    throw new IllegalStateException("无法定义模块类的包 '" + packageName + "'", e);
+            }
+        }
+    }
+
+    /**
+     * 返回的 URL 与 jar: URL 的形式相同, 但由此类加载器读取内容, 不经过 JarURLConnection 缓存的 JarFile, 因此卸载后不会遗留文件句柄.
+     */
+    @Override
+    public URL findResource(String name) {
+        MappedModuleJar mappedJar = this.mappedJar;
+        JarFile jarFile = this.jarFile;
+        try {
+            if(mappedJar != null ? !mappedJar.contains(name) : jarFile == null || jarFile.getEntry(name) == null)
+                return null;
+            return new URL("jar", "", -1, url + "!/" + name, resourceHandler);
+        } catch (MalformedURLException | IllegalStateException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public Enumeration<URL> findResources(String name) throws IOException {
+        URL resource = findResource(name);
+        return resource != null ? Collections.enumeration(Collections.singleton(resource)) : Collections.emptyEnumeration();
+    }
+
+    @Override
+    public InputStream getResourceAsStream(String name) {
+        ClassLoader parent = getParent();
+        if(parent != null) {
+            InputStream inputStream = parent.getResourceAsStream(name);
+            if(inputStream != null)
+                return inputStream;
+        }
+        try {
+            return openResource(name);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /** 从映射区域或共享的 Jar 文件句柄读取此模块的资源, 不存在时为 null */
+    private InputStream openResource(String name) throws IOException {
+        MappedModuleJar mappedJar = this.mappedJar;
+        if(mappedJar != null)
+            return mappedJar.getInputStream(name);
+        JarFile jarFile = this.jarFile;
+        if(jarFile == null)
+            return null;
+        try {
+            JarEntry entry = jarFile.getJarEntry(name);
+            return entry != null ? jarFile.getInputStream(entry) : null;
+        } catch (IllegalStateException e) {
+            throw new IOException("模块 '" + description.getName() + "' 的 Jar 文件已经被关闭.", e);
+        }
+    }
+
+    ModuleMetrics getModuleMetrics() {
+        return metrics;
+    }
+
     Set<String> getClasses() {
         return classes.keySet();
     }
 
-    synchronized void initialize(JavaModule module) {
+    String getModuleName() {
+        return description.getName();
+    }
+
+    /** 此类加载器定义的类数量, 不包括缓存的其他模块的类 */
+    int getDefinedClassCount() {
+        int count = 0;
+        for(Class<?> clazz : classes.values())
+            if(clazz.getClassLoader() == this)
+                count++;
+        return count;
+    }
+
+    File getModuleFile() {
+        return moduleFile;
+    }
+
+    /** 训练运行中此类加载器按顺序定义的类, 不是训练运行时为空 */
+    List<String> getDefinedClasses() {
+        return definedClasses != null ? new ArrayList<>(definedClasses) : Collections.emptyList();
+    }
+
+    /**
+     * 预先定义指定的类而不初始化它们, 不存在或无法链接的类被忽略. 类名列表分给执行器中的多个任务并行定义,
+     * 调用线程也参与定义并等待所有类完成, 执行器中的任务还没有开始时不会等待它们.
+     *
+     * @param executor 执行并行任务的执行器, 为 null 则在调用线程中串行定义
+     * @return 实际定义的类的数量
+     */
+    int preload(List<String> names, Executor executor) {
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger count = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(names.size());
+        Runnable task = () -> {
+            int index;
+            while((index = next.getAndIncrement()) < names.size()) try {
+                if(preload(names.get(index)))
+                    count.incrementAndGet();
+            } finally {
+                done.countDown();
+            }
+        };
+        int tasks = executor != null ? Math.min(getParallelism(executor), names.size() / PRELOAD_BATCH) - 1 : 0;
+        try {
+            for(int i = 0; i < tasks; i++)
+                executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            // 剩余的类在调用线程中定义
+        }
+        task.run();
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return count.get();
+    }
+
+    private boolean preload(String name) {
+        if(!entries.contains(name) || classes.containsKey(name))
+            return false;
+        try {
+            Class.forName(name, false, this);
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            // 模块文件在训练之后变化, 或者依赖的模块没有加载
+            return false;
+        }
+    }
+
+    private static int getParallelism(Executor executor) {
+        if(executor instanceof ForkJoinPool)
+            return ((ForkJoinPool) executor).getParallelism() + 1; // 加上调用线程
+        if(executor instanceof ThreadPoolExecutor)
+            return ((ThreadPoolExecutor) executor).getMaximumPoolSize() + 1;
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /** 移除缓存中由指定类加载器定义的类, 用于解除对已卸载模块的引用 */
+    void removeClasses(ClassLoader classLoader) {
+        classes.values().removeIf(clazz -> clazz.getClassLoader() == classLoader);
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    /** 此模块 Jar 文件内所有类的名称, 在加载时从 Jar 条目建立 */
+    Set<String> getEntries() {
+        return entries;
+    }
+
+    private JarFile getJarFile() throws ClassNotFoundException {
+        JarFile jarFile = this.jarFile;
+        if(jarFile != null)
+            return jarFile;
+        synchronized (jarLock) {
+            if(closed)
+                throw new ClassNotFoundException("模块 '" + description.getName() + "' 已经被卸载.");
+            if(verified) // 文件在校验之后可能已经被替换
+                throw new ClassNotFoundException("模块 '" + description.getName() + "' 只从校验过的内容加载.");
+            if(this.jarFile == null) try {
+                this.jarFile = new JarFile(moduleFile);
+            } catch (IOException e) {
+                throw new ClassNotFoundException("无法重新打开模块 Jar 文件 '" + moduleFile + "'", e);
+            }
+            return this.jarFile;
+        }
+    }
+
+    /** 关闭共享的 Jar 文件句柄, 之后的类加载会重新打开 */
+    void closeJarFile() {
+        synchronized (jarLock) {
+            if(jarFile != null) try {
+                jarFile.close();
+            } catch (IOException e) {
+            } finally {
+                jarFile = null;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        mappedJar = null; // 映射区域在垃圾回收时释放
+        try {
+            closeJarFile();
+        } finally {
+            classes.clear();
+            super.close();
+        }
+    }
+
+    void initialize(JavaModule module) {
         Validate.notNull(module, "初始化的模块对象不能为 null 值.");
         Validate.isTrue(module.getClass().getClassLoader() == this, "无法初始化此模块, 因为它不是当前模块类加载器对象.");
-        if(this.module != null || moduleInitialize != null)
+        if(this.module != null || !moduleInitialize.compareAndSet(null, module))
             throw new IllegalArgumentException("模块已经被初始化.");
-        this.moduleInitialize = module;
         module.initialize(loader, description, moduleFile, this);
     }
+
+    /** 从此类加载器读取资源 URL 的内容 */
+    private final class ResourceHandler extends URLStreamHandler {
+
+        @Override
+        protected URLConnection openConnection(URL resource) throws IOException {
+            String file = resource.getFile();
+            int separator = file.indexOf("!/");
+            if(separator == -1)
+                throw new MalformedURLException("无效的模块资源 URL: " + resource);
+            String name = file.substring(separator + 2);
+            return new URLConnection(resource) {
+                @Override
+                public void connect() {
+                    connected = true;
+                }
+
+                @Override
+                public InputStream getInputStream() throws IOException {
+                    if(closed)
+                        throw new FileNotFoundException("模块 '" + description.getName() + "' 已经被卸载.");
+                    InputStream inputStream = openResource(name);
+                    if(inputStream == null)
+                        throw new FileNotFoundException("模块 '" + description.getName() + "' 中不存在资源 '" + name + "'.");
+                    connect();
+                    return inputStream;
+                }
+            };
+        }
+    }
+
+    private static Manifest readManifest(MappedModuleJar mappedJar) throws IOException {
+        InputStream inputStream = mappedJar.getInputStream(JarFile.MANIFEST_NAME);
+        return inputStream != null ? new Manifest(inputStream) : null;
+    }
+
+    static byte[] readEntry(JarFile jarFile, JarEntry entry) throws IOException {
+        try (InputStream inputStream = jarFile.getInputStream(entry)) {
+            long size = entry.getSize();
+            if(size >= 0 && size <= Integer.MAX_VALUE) {
+                byte[] buffer = new byte[(int) size];
+                int offset = 0, read;
+                while(offset < buffer.length && (read = inputStream.read(buffer, offset, buffer.length - offset)) != -1)
+                    offset += read;
+                if(offset == buffer.length)
+                    return buffer;
+                throw new IOException("模块 Jar 文件条目 '" + entry.getName() + "' 的长度不完整.");
+            }
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while((read = inputStream.read(buffer)) != -1)
+                outputStream.write(buffer, 0, read);
+            return outputStream.toByteArray();
+        }
+    }
 }
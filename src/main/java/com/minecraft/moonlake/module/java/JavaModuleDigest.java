@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package com.minecraft.moonlake.module.java;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 模块 Jar 文件的 SHA-256 摘要. 较大的文件分段映射后计算, 较小的文件使用固定大小的缓冲区分块读取, 都不会将整个文件复制到堆内存.
+ */
+final class JavaModuleDigest {
+
+    /** 每次映射的最大字节数 */
+    private static final int MAP_SIZE = 64 * 1024 * 1024;
+    private static final int READ_SIZE = 64 * 1024;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private JavaModuleDigest() {
+    }
+
+    static byte[] sha256(File file) throws IOException {
+        MessageDigest digest = newDigest();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if(size < MappedModuleJar.BUFFER_THRESHOLD) {
+                ByteBuffer buffer = ByteBuffer.allocate(READ_SIZE);
+                while(channel.read(buffer) >= 0) {
+                    buffer.flip();
+                    digest.update(buffer);
+                    buffer.clear();
+                }
+            } else {
+                for(long position = 0L; position < size; position += MAP_SIZE)
+                    digest.update(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAP_SIZE, size - position)));
+            }
+        }
+        return digest.digest();
+    }
+
+    static byte[] sha256(ByteBuffer buffer) throws IOException {
+        MessageDigest digest = newDigest();
+        digest.update(buffer);
+        return digest.digest();
+    }
+
+    private static MessageDigest newDigest() throws IOException {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e); // 所有 Java 平台都必须支持 SHA-256
+        }
+    }
+
+    /**
+     * 获取文件当前的状态. 大小、修改时间、文件键 (设备和 inode) 和状态改变时间都相同时认为内容没有变化,
+     * 状态改变时间在写入或重命名时由系统更新, 不能像修改时间一样被恢复.
+     */
+    static Stamp stamp(File file) throws IOException {
+        Path path = file.toPath();
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        FileTime changeTime;
+        try {
+            changeTime = (FileTime) Files.getAttribute(path, "unix:ctime");
+        } catch (UnsupportedOperationException | IllegalArgumentException e) {
+            changeTime = attributes.creationTime(); // 没有 unix 属性视图的平台
+        }
+        Object fileKey = attributes.fileKey();
+        return new Stamp(attributes.size(), attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS), changeTime.to(TimeUnit.NANOSECONDS), fileKey != null ? fileKey.toString() : null);
+    }
+
+    static String toHex(byte[] digest) {
+        char[] chars = new char[digest.length * 2];
+        for(int i = 0; i < digest.length; i++) {
+            chars[i * 2] = HEX[(digest[i] >> 4) & 0xF];
+            chars[i * 2 + 1] = HEX[digest[i] & 0xF];
+        }
+        return new String(chars);
+    }
+
+    static final class Stamp {
+
+        final long size;
+        final long lastModified;
+        final long changeTime;
+        final String fileKey; // 平台不支持时为 null
+
+        Stamp(long size, long lastModified, long changeTime, String fileKey) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.changeTime = changeTime;
+            this.fileKey = fileKey;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if(this == obj)
+                return true;
+            if(!(obj instanceof Stamp))
+                return false;
+            Stamp other = (Stamp) obj;
+            return size == other.size && lastModified == other.lastModified && changeTime == other.changeTime && Objects.equals(fileKey, other.fileKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(size, lastModified, changeTime, fileKey);
+        }
+    }
+}
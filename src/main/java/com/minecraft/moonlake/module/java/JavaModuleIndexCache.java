@@ -0,0 +1,312 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.minecraft.moonlake.module.java;
+
+import com.minecraft.moonlake.module.ModuleDescription;
+import com.minecraft.moonlake.module.exception.InvalidModuleDescriptionException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * 模块目录下的模块描述与类索引缓存. 以文件名、大小和修改时间作为键, 未改变的模块 Jar 文件无需打开即可获取描述和类索引.
+ * 模块文件的摘要单独缓存, 键还包括文件键和状态改变时间, 未改变的文件不会重新计算.
+ */
+final class JavaModuleIndexCache {
+
+    static final String FILE_NAME = ".module-index";
+
+    private static final int MAGIC = 0x4D4C4D49; // MLMI
+    private static final int VERSION = 3;
+
+    private final File cacheFile;
+    private final Map<String, Entry> entries;
+    private final Map<String, Digest> digests;
+    private volatile boolean dirty;
+
+    private JavaModuleIndexCache(File cacheFile) {
+        this.cacheFile = cacheFile;
+        this.entries = new ConcurrentHashMap<>();
+        this.digests = new ConcurrentHashMap<>();
+    }
+
+    /** 获取模块文件的缓存条目, 文件的大小或修改时间变化后返回 null */
+    Entry get(File moduleFile) {
+        Entry entry = entries.get(moduleFile.getName());
+        if(entry == null || entry.length != moduleFile.length() || entry.lastModified != moduleFile.lastModified())
+            return null;
+        return entry;
+    }
+
+    void put(File moduleFile, Entry entry) {
+        entries.put(moduleFile.getName(), entry);
+        dirty = true;
+    }
+
+    /** 记录训练运行中模块加载的类, 模块文件已经变化时忽略 */
+    void putPreload(File moduleFile, List<String> preload) {
+        Entry entry = get(moduleFile);
+        if(entry != null && !entry.preload.equals(preload) && entries.replace(moduleFile.getName(), entry, new Entry(entry, preload)))
+            dirty = true;
+    }
+
+    /** 获取模块文件的摘要, 文件的状态与计算时不同时返回 null */
+    byte[] getDigest(File moduleFile, JavaModuleDigest.Stamp stamp) {
+        Digest digest = digests.get(moduleFile.getName());
+        return digest != null && digest.stamp.equals(stamp) ? digest.digest.clone() : null;
+    }
+
+    void putDigest(File moduleFile, JavaModuleDigest.Stamp stamp, byte[] digest) {
+        digests.put(moduleFile.getName(), new Digest(stamp, digest.clone()));
+        dirty = true;
+    }
+
+    static JavaModuleIndexCache load(File directory) {
+        JavaModuleIndexCache cache = new JavaModuleIndexCache(new File(directory, FILE_NAME));
+        if(!cache.cacheFile.isFile())
+            return cache;
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(cache.cacheFile)))) {
+            if(input.readInt() != MAGIC || input.readInt() != VERSION)
+                return cache;
+            int count = input.readInt();
+            for(int i = 0; i < count; i++) {
+                String name = input.readUTF();
+                long length = input.readLong();
+                long lastModified = input.readLong();
+                byte[] properties = new byte[input.readInt()];
+                input.readFully(properties);
+                Set<String> classes = new HashSet<>();
+                int packageCount = input.readInt();
+                for(int j = 0; j < packageCount; j++) {
+                    String packageName = input.readUTF();
+                    String prefix = packageName.isEmpty() ? "" : packageName + ".";
+                    int classCount = input.readInt();
+                    for(int k = 0; k < classCount; k++)
+                        classes.add(prefix + input.readUTF());
+                }
+                int preloadCount = input.readInt();
+                List<String> preload = new ArrayList<>(preloadCount);
+                for(int j = 0; j < preloadCount; j++)
+                    preload.add(input.readUTF());
+                try {
+                    cache.entries.put(name, new Entry(length, lastModified, properties, classes, preload));
+                } catch (InvalidModuleDescriptionException e) {
+                    // 忽略无法解析的条目, 之后会重新读取 Jar 文件
+                }
+            }
+            int digestCount = input.readInt();
+            for(int i = 0; i < digestCount; i++) {
+                String name = input.readUTF();
+                long size = input.readLong();
+                long lastModified = input.readLong();
+                long changeTime = input.readLong();
+                String fileKey = input.readBoolean() ? input.readUTF() : null;
+                byte[] digest = new byte[input.readUnsignedByte()];
+                input.readFully(digest);
+                cache.digests.put(name, new Digest(new JavaModuleDigest.Stamp(size, lastModified, changeTime, fileKey), digest));
+            }
+        } catch (IOException e) {
+            // 缓存文件损坏时丢弃, 之后会重新建立
+            cache.entries.clear();
+            cache.digests.clear();
+        }
+        return cache;
+    }
+
+    /** 如果有变化则写入缓存文件, 同时移除模块文件已经不存在的条目 */
+    synchronized void save() throws IOException {
+        File directory = cacheFile.getParentFile();
+        if(entries.keySet().removeIf(name -> !new File(directory, name).isFile()))
+            dirty = true;
+        if(digests.keySet().removeIf(name -> !new File(directory, name).isFile()))
+            dirty = true;
+        if(!dirty)
+            return;
+        dirty = false;
+        File tempFile = new File(directory, FILE_NAME + ".tmp");
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            List<Map.Entry<String, Entry>> snapshot = new ArrayList<>(entries.entrySet());
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(snapshot.size());
+            for(Map.Entry<String, Entry> mapEntry : snapshot) {
+                Entry entry = mapEntry.getValue();
+                output.writeUTF(mapEntry.getKey());
+                output.writeLong(entry.length);
+                output.writeLong(entry.lastModified);
+                output.writeInt(entry.properties.length);
+                output.write(entry.properties);
+                // 按包分组写入类名, 避免重复写入包名前缀
+                Map<String, List<String>> packages = new TreeMap<>();
+                for(String className : entry.classes) {
+                    int dot = className.lastIndexOf('.');
+                    String packageName = dot == -1 ? "" : className.substring(0, dot);
+                    packages.computeIfAbsent(packageName, key -> new ArrayList<>()).add(className.substring(dot + 1));
+                }
+                output.writeInt(packages.size());
+                for(Map.Entry<String, List<String>> packageEntry : packages.entrySet()) {
+                    output.writeUTF(packageEntry.getKey());
+                    output.writeInt(packageEntry.getValue().size());
+                    for(String simpleName : packageEntry.getValue())
+                        output.writeUTF(simpleName);
+                }
+                output.writeInt(entry.preload.size());
+                for(String className : entry.preload)
+                    output.writeUTF(className);
+            }
+            List<Map.Entry<String, Digest>> digestSnapshot = new ArrayList<>(digests.entrySet());
+            output.writeInt(digestSnapshot.size());
+            for(Map.Entry<String, Digest> mapEntry : digestSnapshot) {
+                JavaModuleDigest.Stamp stamp = mapEntry.getValue().stamp;
+                output.writeUTF(mapEntry.getKey());
+                output.writeLong(stamp.size);
+                output.writeLong(stamp.lastModified);
+                output.writeLong(stamp.changeTime);
+                output.writeBoolean(stamp.fileKey != null);
+                if(stamp.fileKey != null)
+                    output.writeUTF(stamp.fileKey);
+                output.writeByte(mapEntry.getValue().digest.length);
+                output.write(mapEntry.getValue().digest);
+            }
+        }
+        try {
+            Files.move(tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static final class Digest {
+
+        private final JavaModuleDigest.Stamp stamp;
+        private final byte[] digest;
+
+        private Digest(JavaModuleDigest.Stamp stamp, byte[] digest) {
+            this.stamp = stamp;
+            this.digest = digest;
+        }
+    }
+
+    static final class Entry {
+
+        private final long length;
+        private final long lastModified;
+        private final byte[] properties;
+        private final Set<String> classes;
+        private final List<String> preload;
+        private final ModuleDescription description;
+
+        private Entry(long length, long lastModified, byte[] properties, Set<String> classes, List<String> preload) throws InvalidModuleDescriptionException {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.properties = properties;
+            this.classes = Collections.unmodifiableSet(classes);
+            this.preload = Collections.unmodifiableList(preload);
+            this.description = new ModuleDescription(new ByteArrayInputStream(properties));
+        }
+
+        private Entry(Entry entry, List<String> preload) {
+            this.length = entry.length;
+            this.lastModified = entry.lastModified;
+            this.properties = entry.properties;
+            this.classes = entry.classes;
+            this.preload = Collections.unmodifiableList(new ArrayList<>(preload));
+            this.description = entry.description;
+        }
+
+        ModuleDescription getDescription() {
+            return description;
+        }
+
+        /** 模块 Jar 文件内所有类的名称 */
+        Set<String> getClasses() {
+            return classes;
+        }
+
+        /** 训练运行中按定义顺序记录的类名称, 没有训练过时为空 */
+        List<String> getPreload() {
+            return preload;
+        }
+
+        /** 从已经打开的模块 Jar 文件读取描述并建立类索引 */
+        static Entry read(File moduleFile, JarFile jarFile) throws InvalidModuleDescriptionException {
+            long length = moduleFile.length();
+            long lastModified = moduleFile.lastModified();
+            JarEntry entry = jarFile.getJarEntry("module.properties");
+            if(entry == null)
+                throw new InvalidModuleDescriptionException(new FileNotFoundException("模块 Jar 文件没有存在 module.properties 属性文件."));
+            byte[] properties;
+            try {
+                properties = JavaModuleClassLoader.readEntry(jarFile, entry);
+            } catch (IOException e) {
+                throw new InvalidModuleDescriptionException(e);
+            }
+            Set<String> classes = new HashSet<>();
+            Enumeration<JarEntry> enumeration = jarFile.entries();
+            while(enumeration.hasMoreElements())
+                addClass(classes, enumeration.nextElement().getName());
+            return new Entry(length, lastModified, properties, classes, Collections.emptyList());
+        }
+
+        /** 从已经读入内存的模块 Jar 文件读取描述并建立类索引, 不访问文件本身 */
+        static Entry read(File moduleFile, MappedModuleJar mappedJar) throws InvalidModuleDescriptionException {
+            ByteBuffer buffer;
+            try {
+                buffer = mappedJar.getBuffer("module.properties");
+            } catch (IOException e) {
+                throw new InvalidModuleDescriptionException(e);
+            }
+            if(buffer == null)
+                throw new InvalidModuleDescriptionException(new FileNotFoundException("模块 Jar 文件没有存在 module.properties 属性文件."));
+            byte[] properties = new byte[buffer.remaining()];
+            buffer.get(properties);
+            Set<String> classes = new HashSet<>();
+            for(String name : mappedJar.getNames())
+                addClass(classes, name);
+            return new Entry(moduleFile.length(), moduleFile.lastModified(), properties, classes, Collections.emptyList());
+        }
+
+        private static void addClass(Set<String> classes, String name) {
+            if(name.endsWith(".class") && !name.startsWith("META-INF/") && !name.equals("module-info.class"))
+                classes.add(name.substring(0, name.length() - 6).replace('/', '.'));
+        }
+    }
+}
@@ -21,138 +21,820 @@ package com.minecraft.moonlake.module.java;
 import com.minecraft.moonlake.module.*;
 import com.minecraft.moonlake.module.exception.InvalidModuleDescriptionException;
 import com.minecraft.moonlake.module.exception.InvalidModuleException;
+import com.minecraft.moonlake.module.exception.ModuleException;
+import com.minecraft.moonlake.module.exception.ModuleTimeoutException;
+import com.minecraft.moonlake.module.metrics.ModulePhase;
+import com.minecraft.moonlake.module.metrics.ModuleResourceResolver;
 import com.minecraft.moonlake.validate.Validate;
 
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.jar.JarEntry;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.jar.JarFile;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
 
-public final class JavaModuleLoader extends ModuleLoaderBase {
+public final class JavaModuleLoader extends ModuleLoaderBase implements ModuleResourceResolver {
 
     private final Map<String, Class<?>> classes;
     private final List<JavaModuleClassLoader> loaders;
+    private final Map<String, JavaModuleClassLoader> classOwners;
+    private final Map<String, LazyJavaModule> lazyOwners;
+    private final Set<String> missingClasses;
+    private final AtomicLong missingCacheHits;
+    private final AtomicLong missingCacheMisses;
+    private final ReferenceQueue<JavaModuleClassLoader> unloadedQueue;
+    private final Map<Reference<JavaModuleClassLoader>, String> unloadedLoaders;
+    private final Map<File, JavaModuleIndexCache> indexCaches;
+    private final ExecutorService lifecycleExecutor;
+    private volatile Executor preloadExecutor;
+    private volatile long enableTimeout;
+    private volatile long disableTimeout;
+    private volatile ModuleTimeoutPolicy timeoutPolicy;
+    private volatile boolean training;
+    private volatile boolean preload;
+    private volatile boolean mappedJar;
+    private volatile boolean digestCache;
+    private volatile Set<String> trustedDigests; // 为 null 时不校验
+
+    /** 未找到类名缓存的最大数量, 超出后整体清空 */
+    private static final int MISSING_CACHE_SIZE = 4096;
+    private static final Pattern DIGEST_PATTERN = Pattern.compile("[0-9a-fA-F]{64}");
 
     public JavaModuleLoader() {
         this.classes = new ConcurrentHashMap<>();
         this.loaders = new CopyOnWriteArrayList<>();
+        this.classOwners = new ConcurrentHashMap<>();
+        this.lazyOwners = new ConcurrentHashMap<>();
+        this.missingClasses = ConcurrentHashMap.newKeySet();
+        this.missingCacheHits = new AtomicLong();
+        this.missingCacheMisses = new AtomicLong();
+        this.unloadedQueue = new ReferenceQueue<>();
+        this.unloadedLoaders = new ConcurrentHashMap<>();
+        this.indexCaches = new ConcurrentHashMap<>();
+        AtomicInteger threadId = new AtomicInteger();
+        this.lifecycleExecutor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "MoonLake-Module-Lifecycle-" + threadId.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.timeoutPolicy = ModuleTimeoutPolicy.SKIP;
+        this.preload = true;
+        this.digestCache = true;
+        this.preloadExecutor = ForkJoinPool.commonPool();
+    }
+
+    public boolean isTraining() {
+        return training;
+    }
+
+    /**
+     * 设置是否为训练运行. 训练运行中记录每个模块类加载器定义的类, 在模块关闭或保存索引缓存时写入索引缓存,
+     * 之后的启动在模块加载时预先定义这些类. 只对之后加载的模块生效.
+     */
+    public void setTraining(boolean training) {
+        this.training = training;
+    }
+
+    public boolean isPreload() {
+        return preload;
+    }
+
+    public boolean isMappedJar() {
+        return mappedJar;
+    }
+
+    /**
+     * 设置是否将之后加载的模块 Jar 文件映射到内存 (小于 1 MiB 的文件读入堆内存), 直接从映射区域定义类和读取资源而不再持有 JarFile.
+     * 签名、Zip64 或加密的模块 Jar 文件仍然使用 JarFile. 映射期间模块文件不能被原地修改, 替换时应写入新文件后移动.
+     */
+    public void setMappedJar(boolean mappedJar) {
+        this.mappedJar = mappedJar;
+    }
+
+    /** 设置是否在加载模块时预先定义训练运行记录的类, 默认开启, 训练运行中不会预加载 */
+    public void setPreload(boolean preload) {
+        this.preload = preload;
+    }
+
+    public Executor getPreloadExecutor() {
+        return preloadExecutor;
+    }
+
+    /** 设置并行预加载类的执行器, 默认使用公共线程池. {@link JavaModuleManager} 使用它的并行执行器 */
+    public void setPreloadExecutor(Executor preloadExecutor) {
+        Validate.notNull(preloadExecutor, "预加载执行器对象不能为 null 值.");
+        this.preloadExecutor = preloadExecutor;
+    }
+
+    public boolean isDigestCache() {
+        return digestCache;
+    }
+
+    /**
+     * 设置是否将模块文件的摘要缓存在模块目录的索引缓存中, 默认开启. 文件的大小、修改时间、文件键和状态改变时间都没有变化时不再计算摘要.
+     * 缓存与模块文件在同一目录, 不信任可以写入模块目录的用户时应关闭.
+     */
+    public void setDigestCache(boolean digestCache) {
+        this.digestCache = digestCache;
+    }
+
+    /** 是否校验模块文件的摘要 */
+    public boolean isVerify() {
+        return trustedDigests != null;
+    }
+
+    /** 信任的模块文件 SHA-256 摘要, 不校验时为 null */
+    public Set<String> getTrustedDigests() {
+        return trustedDigests;
+    }
+
+    /**
+     * 设置信任的模块文件 SHA-256 摘要, 之后只加载摘要在此列表中的模块, 为 null 时不校验.
+     * 校验时模块文件映射到内存 (小于 1 MiB 的文件读入堆内存), 摘要和模块描述、类都来自同一份映射, 不使用索引缓存中的描述, 也不会再从文件读取.
+     * 签名的模块文件另外由在校验前后没有变化的 JarFile 读取类, 以校验签名. 映射期间模块文件不能被原地修改, 替换时应写入新文件后移动.
+     */
+    public void setTrustedDigests(Collection<String> digests) {
+        if(digests == null) {
+            trustedDigests = null;
+            return;
+        }
+        Set<String> trusted = new HashSet<>();
+        for(String digest : digests) {
+            Validate.notNull(digest, "摘要对象不能为 null 值.");
+            Validate.isTrue(DIGEST_PATTERN.matcher(digest.trim()).matches(), "无效的 SHA-256 摘要 '" + digest + "'.");
+            trusted.add(digest.trim().toLowerCase(Locale.ROOT));
+        }
+        trustedDigests = Collections.unmodifiableSet(trusted);
+    }
+
+    /**
+     * 从 sha256sum 格式的文件读取信任的摘要, 每行的第一列为摘要, 忽略空行和 # 开头的注释.
+     */
+    public void loadTrustedDigests(File file) throws IOException {
+        Validate.notNull(file, "摘要文件对象不能为 null 值.");
+        List<String> digests = new ArrayList<>();
+        for(String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+            line = line.trim();
+            if(line.isEmpty() || line.startsWith("#"))
+                continue;
+            digests.add(line.split("\\s+", 2)[0]);
+        }
+        setTrustedDigests(digests);
+    }
+
+    public long getEnableTimeout() {
+        return enableTimeout;
+    }
+
+    /**
+     * 设置没有在模块描述中指定 enable-timeout 的模块的启用时间预算.
+     * 大于 0 时 onEnable 在单独的工作线程中执行, 为 0 时在调用线程中执行且不限制时间.
+     */
+    public void setEnableTimeout(long timeout, TimeUnit unit) {
+        Validate.notNull(unit, "时间单位对象不能为 null 值.");
+        Validate.isTrue(timeout >= 0L, "时间预算不能小于 0.");
+        this.enableTimeout = unit.toMillis(timeout);
+    }
+
+    public long getDisableTimeout() {
+        return disableTimeout;
+    }
+
+    /**
+     * 设置没有在模块描述中指定 disable-timeout 的模块的关闭时间预算, 规则同 {@link #setEnableTimeout(long, TimeUnit)}.
+     */
+    public void setDisableTimeout(long timeout, TimeUnit unit) {
+        Validate.notNull(unit, "时间单位对象不能为 null 值.");
+        Validate.isTrue(timeout >= 0L, "时间预算不能小于 0.");
+        this.disableTimeout = unit.toMillis(timeout);
+    }
+
+    public ModuleTimeoutPolicy getTimeoutPolicy() {
+        return timeoutPolicy;
+    }
+
+    public void setTimeoutPolicy(ModuleTimeoutPolicy timeoutPolicy) {
+        Validate.notNull(timeoutPolicy, "超时策略对象不能为 null 值.");
+        this.timeoutPolicy = timeoutPolicy;
     }
 
     @Override
     public Module loadModule(File moduleFile) throws InvalidModuleException {
+        return loadModule(moduleFile, true);
+    }
+
+    /** 检查器使用加载时读取的模块描述, 不会为检查再次打开模块文件 */
+    @Override
+    public Module loadModule(File moduleFile, ModuleDescriptionValidator validator) throws InvalidModuleException, InvalidModuleDescriptionException {
+        return loadModule(moduleFile, true, validator);
+    }
+
+    /**
+     * @param allowLazy 为 true 时声明了 lazy=true 的模块只返回延迟加载的模块而不打开类加载器
+     */
+    Module loadModule(File moduleFile, boolean allowLazy) throws InvalidModuleException {
+        try {
+            return loadModule(moduleFile, allowLazy, null);
+        } catch (InvalidModuleDescriptionException e) {
+            throw new InvalidModuleException(e);
+        }
+    }
+
+    private Module loadModule(File moduleFile, boolean allowLazy, ModuleDescriptionValidator validator) throws InvalidModuleException, InvalidModuleDescriptionException {
         Validate.notNull(moduleFile, "模块文件对象不能为 null 值.");
         if(!moduleFile.exists())
             throw new InvalidModuleException(new FileNotFoundException(moduleFile.getPath() + " 模块文件不存在."));
-        ModuleDescription description = null;
+        if(allowLazy && !isVerify()) {
+            JavaModuleIndexCache.Entry entry = getIndexCache(moduleFile).get(moduleFile);
+            if(entry != null && entry.getDescription().isLazy()) {
+                if(validator != null)
+                    validator.validate(entry.getDescription());
+                return addLazyModule(new LazyJavaModule(this, entry.getDescription(), moduleFile, entry.getClasses()));
+            }
+        }
+        JarFile jarFile = null;
+        MappedModuleJar verifiedJar = null;
+        JavaModuleDigest.Stamp stamp = null; // 映射前后文件的状态相同时才使用摘要缓存
         try {
-            description = getDescription(moduleFile);
-        } catch (InvalidModuleDescriptionException e) {
+            if(isVerify()) {
+                stamp = JavaModuleDigest.stamp(moduleFile);
+                verifiedJar = MappedModuleJar.open(moduleFile);
+                if(!stamp.equals(JavaModuleDigest.stamp(moduleFile)))
+                    stamp = null;
+            } else {
+                jarFile = new JarFile(moduleFile);
+            }
+        } catch (IOException e) {
+            getMetrics().recordFailure(moduleFile.getName(), ModulePhase.VERIFY, e);
             throw new InvalidModuleException(e);
         }
+        // 模块描述与类加载共用同一个 Jar 文件句柄, 由模块类加载器负责关闭
         JavaModuleClassLoader loader = null;
+        String name = moduleFile.getName();
+        ModulePhase phase = ModulePhase.DESCRIPTION;
         try {
-            loader = new JavaModuleClassLoader(this, getClass().getClassLoader(), description, moduleFile);
-        } catch (InvalidModuleException e) {
+            long start = System.nanoTime();
+            JavaModuleIndexCache.Entry entry = verifiedJar != null
+                    ? JavaModuleIndexCache.Entry.read(moduleFile, verifiedJar)
+                    : getIndexEntry(moduleFile, jarFile);
+            name = entry.getDescription().getName();
+            getMetrics().recordPhase(name, phase, System.nanoTime() - start);
+            if(verifiedJar != null) {
+                phase = ModulePhase.VERIFY;
+                start = System.nanoTime();
+                verify(moduleFile, verifiedJar, stamp);
+                if(verifiedJar.isSigned())
+                    jarFile = openSigned(moduleFile, stamp);
+                getMetrics().recordPhase(name, phase, System.nanoTime() - start);
+            }
+            if(validator != null)
+                validator.validate(entry.getDescription());
+            if(allowLazy && entry.getDescription().isLazy()) {
+                closeQuietly(jarFile);
+                return addLazyModule(new LazyJavaModule(this, entry.getDescription(), moduleFile, entry.getClasses()));
+            }
+            phase = ModulePhase.CLASS_LOADER;
+            loader = new JavaModuleClassLoader(this, getClass().getClassLoader(), entry.getDescription(), moduleFile, jarFile, verifiedJar, entry.getClasses());
+            List<String> preloadClasses = getPreload(moduleFile, entry);
+            if(preload && !training && !preloadClasses.isEmpty()) {
+                phase = ModulePhase.PRELOAD;
+                start = System.nanoTime();
+                loader.preload(preloadClasses, preloadExecutor);
+                getMetrics().recordPhase(name, phase, System.nanoTime() - start);
+            }
+        } catch (InvalidModuleDescriptionException | InvalidModuleException e) {
+            closeQuietly(jarFile);
+            getMetrics().recordFailure(name, phase, e);
             throw e;
         } catch (Exception e) {
+            closeQuietly(jarFile);
+            getMetrics().recordFailure(name, phase, e);
             throw new InvalidModuleException(e);
         }
-        loaders.add(loader);
+        addLoader(loader);
         return loader.module;
     }
 
     @Override
     public ModuleDescription getDescription(File moduleFile) throws InvalidModuleDescriptionException {
         Validate.notNull(moduleFile, "模块文件对象不能为 null 值.");
-        JarFile jarFile = null;
-        InputStream inputStream = null;
+        return getIndexEntry(moduleFile, null).getDescription();
+    }
 
+    /**
+     * 获取模块文件的描述和类索引, 模块文件没有变化时直接使用缓存而不打开 Jar 文件. 启用校验时不使用缓存的描述.
+     *
+     * @param jarFile 已经打开的模块 Jar 文件, 为 null 时需要读取则临时打开
+     */
+    private JavaModuleIndexCache.Entry getIndexEntry(File moduleFile, JarFile jarFile) throws InvalidModuleDescriptionException {
+        JavaModuleIndexCache indexCache = getIndexCache(moduleFile);
+        if(!isVerify()) {
+            JavaModuleIndexCache.Entry entry = indexCache.get(moduleFile);
+            if(entry != null)
+                return entry;
+        }
+        JavaModuleIndexCache.Entry entry;
+        boolean open = jarFile == null;
         try {
-            jarFile = new JarFile(moduleFile);
-            JarEntry entry = jarFile.getJarEntry("module.properties");
-            if(entry == null)
-                throw new InvalidModuleDescriptionException(new FileNotFoundException("模块 Jar 文件没有存在 module.properties 属性文件."));
-            inputStream = jarFile.getInputStream(entry);
-            return new ModuleDescription(inputStream);
+            if(open)
+                jarFile = new JarFile(moduleFile);
+            entry = JavaModuleIndexCache.Entry.read(moduleFile, jarFile);
         } catch (IOException e) {
             throw new InvalidModuleDescriptionException(e);
         } finally {
-            if(jarFile != null) try {
-                jarFile.close();
-            } catch (Exception e) {
+            if(open)
+                closeQuietly(jarFile);
+        }
+        indexCache.put(moduleFile, entry);
+        return entry;
+    }
+
+    /** 训练运行记录的类只是预加载的提示, 校验时也可以使用索引缓存中的记录 */
+    private List<String> getPreload(File moduleFile, JavaModuleIndexCache.Entry entry) {
+        if(!entry.getPreload().isEmpty())
+            return entry.getPreload();
+        JavaModuleIndexCache.Entry cached = getIndexCache(moduleFile).get(moduleFile);
+        return cached != null ? cached.getPreload() : Collections.<String>emptyList();
+    }
+
+    /**
+     * 读取模块文件的内容并计算 SHA-256 摘要, 不使用任何缓存.
+     */
+    public String getDigest(File moduleFile) throws IOException {
+        Validate.notNull(moduleFile, "模块文件对象不能为 null 值.");
+        return JavaModuleDigest.toHex(JavaModuleDigest.sha256(moduleFile));
+    }
+
+    /**
+     * 在多个线程中计算模块文件的摘要并写入摘要缓存, 在加载模块之前调用使启动时的校验可以并行进行, 加载时未改变的文件不会再计算.
+     * 没有启用校验或摘要缓存时不执行.
+     */
+    public void computeDigests(Collection<File> moduleFiles) {
+        Validate.notNull(moduleFiles, "模块文件集合对象不能为 null 值.");
+        if(!isVerify() || !digestCache)
+            return;
+        moduleFiles.parallelStream().forEach(moduleFile -> {
+            try {
+                JavaModuleIndexCache indexCache = getIndexCache(moduleFile);
+                JavaModuleDigest.Stamp stamp = JavaModuleDigest.stamp(moduleFile);
+                if(indexCache.getDigest(moduleFile, stamp) != null)
+                    return;
+                byte[] digest = JavaModuleDigest.sha256(moduleFile);
+                if(stamp.equals(JavaModuleDigest.stamp(moduleFile))) // 计算期间被修改的文件在加载时重新计算
+                    indexCache.putDigest(moduleFile, stamp, digest);
+            } catch (IOException e) {
+                // 加载模块时再报告
             }
-            if(inputStream != null) try {
-                inputStream.close();
-            } catch (Exception e) {
+        });
+    }
+
+    /**
+     * @param stamp 映射模块文件前后文件的状态, 期间发生变化时为 null, 不使用摘要缓存
+     */
+    private void verify(File moduleFile, MappedModuleJar mappedJar, JavaModuleDigest.Stamp stamp) throws InvalidModuleException {
+        Set<String> trusted = trustedDigests;
+        if(trusted == null)
+            return;
+        boolean cached = stamp != null && digestCache;
+        byte[] digest = cached ? getIndexCache(moduleFile).getDigest(moduleFile, stamp) : null;
+        try {
+            if(digest == null) {
+                digest = mappedJar.getDigest();
+                if(cached)
+                    getIndexCache(moduleFile).putDigest(moduleFile, stamp, digest);
             }
+        } catch (IOException e) {
+            throw new InvalidModuleException(e);
         }
+        String hex = JavaModuleDigest.toHex(digest);
+        if(!trusted.contains(hex))
+            throw new InvalidModuleException("模块文件 '" + moduleFile.getName() + "' 的 SHA-256 摘要 " + hex + " 不在信任列表中.");
+    }
+
+    /** 打开签名的模块文件以校验签名, 只有文件的状态与校验摘要时相同才使用 */
+    private static JarFile openSigned(File moduleFile, JavaModuleDigest.Stamp stamp) throws IOException, InvalidModuleException {
+        if(stamp != null) {
+            JarFile jarFile = new JarFile(moduleFile);
+            if(stamp.equals(JavaModuleDigest.stamp(moduleFile)))
+                return jarFile;
+            closeQuietly(jarFile);
+        }
+        throw new InvalidModuleException("签名的模块文件 '" + moduleFile.getName() + "' 在校验期间被修改.");
+    }
+
+    private JavaModuleIndexCache getIndexCache(File moduleFile) {
+        File directory = moduleFile.getAbsoluteFile().getParentFile();
+        return indexCaches.computeIfAbsent(directory, JavaModuleIndexCache::load);
+    }
+
+    /** 将模块描述与类索引缓存的变化写入各模块目录下的缓存文件, 训练运行中同时写入已加载的模块记录的类 */
+    public void saveIndexCache() {
+        for(JavaModuleClassLoader loader : loaders)
+            recordTraining(loader);
+        for(JavaModuleIndexCache indexCache : indexCaches.values()) try {
+            indexCache.save();
+        } catch (IOException e) {
+            handlerException(e);
+        }
+    }
+
+    private void recordTraining(JavaModuleClassLoader loader) {
+        List<String> defined = loader.getDefinedClasses();
+        if(!defined.isEmpty())
+            getIndexCache(loader.getModuleFile()).putPreload(loader.getModuleFile(), defined);
+    }
+
+    Module addLazyModule(LazyJavaModule module) {
+        for(String name : module.getClasses())
+            lazyOwners.putIfAbsent(name, module);
+        missingClasses.clear(); // 延迟加载的模块可能提供之前未找到的类
+        return module;
+    }
+
+    void removeLazyModule(LazyJavaModule module) {
+        for(String name : module.getClasses())
+            lazyOwners.remove(name, module);
     }
 
     @Override
     public void enableModule(Module module) {
+        try {
+            enableModuleTimed(module);
+        } catch (ModuleTimeoutException e) {
+            handlerException(e);
+        }
+    }
+
+    @Override
+    public void enableModuleTimed(Module module) throws ModuleTimeoutException {
+        if(module instanceof LazyJavaModule) {
+            LazyJavaModule lazyModule = (LazyJavaModule) module;
+            JavaModule activated = lazyModule.getModule();
+            if(activated != null)
+                enableModuleTimed(activated);
+            else
+                lazyModule.setEnableRequested(true); // 第一次使用时启用
+            return;
+        }
         if(!(module instanceof JavaModule))
             throw new IllegalArgumentException("模块对象与当前模块类加载器无关.");
         if(!module.isEnable()) {
-            module.getLogger().info("启用模块中 " + module.getDescription().getFullName());
+            Logger logger = module.getLogger();
+            if(logger.isLoggable(Level.INFO)) // 级别关闭时不构建消息
+                logger.info("启用模块中 " + module.getDescription().getFullName());
             JavaModule javaModule = (JavaModule) module;
             JavaModuleClassLoader loader = (JavaModuleClassLoader) javaModule.getClassLoader();
             if(!loaders.contains(loader))
-                loaders.add(loader);
+                addLoader(loader);
+            long timeout = module.getDescription().getEnableTimeout();
+            long start = System.nanoTime();
+            ModuleTimeoutException timeoutException = null;
             try {
-                javaModule.setEnable(true);
+                setEnable(javaModule, true, timeout >= 0L ? timeout : enableTimeout);
+            } catch (ModuleTimeoutException e) {
+                getMetrics().recordFailure(module.getName(), ModulePhase.ENABLE, e);
+                timeoutException = e;
+                if(e.getPolicy() != ModuleTimeoutPolicy.SKIP) {
+                    fireModuleDisabled(module); // 清理 onEnable 中已经注册的内容
+                    removeLoader(loader);
+                    removeClasses(loader);
+                }
             } catch (Exception e) {
+                getMetrics().recordFailure(module.getName(), ModulePhase.ENABLE, e);
                 handlerException(e);
             }
+            getMetrics().recordPhase(module.getName(), ModulePhase.ENABLE, System.nanoTime() - start);
+            if(module.isEnable())
+                fireModuleEnabled(module);
+            if(timeoutException != null)
+                throw timeoutException;
         }
     }
 
     @Override
     public void disableModule(Module module) {
+        try {
+            disableModuleTimed(module);
+        } catch (ModuleTimeoutException e) {
+            handlerException(e);
+        }
+    }
+
+    @Override
+    public void disableModuleTimed(Module module) throws ModuleTimeoutException {
+        if(module instanceof LazyJavaModule) {
+            LazyJavaModule lazyModule = (LazyJavaModule) module;
+            JavaModule activated = lazyModule.getModule();
+            if(activated != null)
+                disableModuleTimed(activated);
+            else
+                lazyModule.setEnableRequested(false);
+            return;
+        }
         if(!(module instanceof JavaModule))
             throw new IllegalArgumentException("模块对象与当前模块类加载器无关.");
         if(module.isEnable()) {
-            module.getLogger().info("关闭模块中 " + module.getDescription().getFullName());
+            Logger logger = module.getLogger();
+            if(logger.isLoggable(Level.INFO))
+                logger.info("关闭模块中 " + module.getDescription().getFullName());
             JavaModule javaModule = (JavaModule) module;
             ClassLoader classLoader = javaModule.getClassLoader();
+            long timeout = module.getDescription().getDisableTimeout();
+            long start = System.nanoTime();
+            ModuleTimeoutException timeoutException = null;
             try {
-                javaModule.setEnable(false);
+                setEnable(javaModule, false, timeout >= 0L ? timeout : disableTimeout);
+            } catch (ModuleTimeoutException e) {
+                getMetrics().recordFailure(module.getName(), ModulePhase.DISABLE, e);
+                timeoutException = e;
             } catch (Exception e) {
+                getMetrics().recordFailure(module.getName(), ModulePhase.DISABLE, e);
                 handlerException(e);
             }
+            getMetrics().recordPhase(module.getName(), ModulePhase.DISABLE, System.nanoTime() - start);
+            fireModuleDisabled(module); // 在关闭类加载器的文件句柄之前清理模块注册的内容
             if(classLoader instanceof JavaModuleClassLoader) {
                 JavaModuleClassLoader loader = (JavaModuleClassLoader) classLoader;
-                loaders.remove(loader);
-                for(String name : loader.getClasses())
-                    removeClass(name);
+                recordTraining(loader);
+                removeLoader(loader);
+                removeClasses(loader);
+                loader.closeJarFile();
             }
+            if(timeoutException != null)
+                throw timeoutException;
+        }
+    }
+
+    /**
+     * 在时间预算内执行模块的启用或关闭, 超时时按超时策略处理并抛出带有工作线程堆栈的超时异常.
+     *
+     * @param timeout 时间预算毫秒数, 为 0 时在调用线程中执行
+     */
+    private void setEnable(JavaModule module, boolean enable, long timeout) throws Exception {
+        if(timeout <= 0L) {
+            module.setEnable(enable);
+            return;
+        }
+        AtomicReference<Thread> worker = new AtomicReference<>();
+        CountDownLatch finished = new CountDownLatch(1);
+        Future<?> future = lifecycleExecutor.submit(() -> {
+            worker.set(Thread.currentThread());
+            try {
+                module.setEnable(enable);
+            } finally {
+                worker.set(null);
+                finished.countDown();
+            }
+            return null;
+        });
+        try {
+            future.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : new ModuleException(cause);
+        } catch (TimeoutException e) {
+            ModuleTimeoutPolicy policy = timeoutPolicy;
+            String message = "模块 '" + module.getName() + "' 的" + (enable ? "启用" : "关闭") + "超过了 " + timeout + " 毫秒.";
+            Thread thread = worker.get();
+            StackTraceElement[] stackTrace = thread != null ? thread.getStackTrace() : null;
+            if(policy != ModuleTimeoutPolicy.SKIP) {
+                // 回调线程结束之前不能移除模块的类, 不响应中断时只能按 SKIP 处理
+                future.cancel(true);
+                if(awaitQuietly(finished, timeout)) {
+                    if(enable)
+                        module.resetEnable();
+                } else {
+                    message += " 回调线程没有响应中断, 按 SKIP 策略处理.";
+                    policy = ModuleTimeoutPolicy.SKIP;
+                }
+            }
+            ModuleTimeoutException exception = new ModuleTimeoutException(message, policy);
+            if(stackTrace != null)
+                exception.setStackTrace(stackTrace);
+            throw exception;
+        }
+    }
+
+    private static boolean awaitQuietly(CountDownLatch latch, long timeout) {
+        try {
+            return latch.await(timeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    @Override
+    public void unloadModule(Module module) {
+        if(module instanceof LazyJavaModule) {
+            LazyJavaModule lazyModule = (LazyJavaModule) module;
+            lazyModule.setUnloaded();
+            removeLazyModule(lazyModule);
+            if(lazyModule.getModule() != null)
+                unloadModule(lazyModule.getModule());
+            return;
+        }
+        if(!(module instanceof JavaModule))
+            throw new IllegalArgumentException("模块对象与当前模块类加载器无关.");
+        if(module.isEnable())
+            disableModule(module);
+        ClassLoader classLoader = ((JavaModule) module).getClassLoader();
+        if(!(classLoader instanceof JavaModuleClassLoader))
+            return;
+        JavaModuleClassLoader loader = (JavaModuleClassLoader) classLoader;
+        removeLoader(loader);
+        removeClasses(loader);
+        for(JavaModuleClassLoader other : loaders) // 其他模块缓存的此模块的类
+            other.removeClasses(loader);
+        try {
+            loader.close();
+        } catch (IOException e) {
+            handlerException(e);
         }
+        unloadedLoaders.put(new WeakReference<>(loader, unloadedQueue), module.getName());
+    }
+
+    /**
+     * 获取已经卸载但类加载器仍未被垃圾回收的模块名称. 在完整的 GC 之后仍然存在的模块说明仍有对象引用着它的类.
+     */
+    public List<String> getLeakedModules() {
+        Reference<? extends JavaModuleClassLoader> reference;
+        while((reference = unloadedQueue.poll()) != null)
+            unloadedLoaders.remove(reference);
+        return new ArrayList<>(unloadedLoaders.values());
     }
 
     Class<?> getClassByName(String name) {
+        return getClassByName(name, null);
+    }
+
+    /**
+     * @param requester 请求查找的模块类加载器, 由其他模块提供的类会计入提供模块的跨模块查找次数
+     */
+    Class<?> getClassByName(String name, JavaModuleClassLoader requester) {
         Class<?> clazz = classes.get(name);
-        if(clazz != null)
+        if(clazz != null) {
+            ClassLoader owner = clazz.getClassLoader();
+            if(owner != requester && owner instanceof JavaModuleClassLoader)
+                ((JavaModuleClassLoader) owner).getModuleMetrics().incrementCrossModuleLookups();
             return clazz;
-        for(JavaModuleClassLoader loader : loaders) try {
-            clazz = loader.findClass(name, false);
-        } catch (Exception e) {
-            if(clazz != null)
-                return clazz;
         }
-        return null;
+        JavaModuleClassLoader owner = getClassOwner(name);
+        if(owner == null)
+            owner = activateLazyOwner(name);
+        if(owner == null)
+            return null; // 没有任何模块提供此类
+        try {
+            clazz = owner.findClass(name, false);
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+        if(owner != requester)
+            owner.getModuleMetrics().incrementCrossModuleLookups();
+        return clazz;
+    }
+
+    /** 以类名索引查找声明了此类的模块类加载器, 不经过全局的类缓存 */
+    JavaModuleClassLoader getClassOwner(String name) {
+        return classOwners.get(name);
+    }
+
+    boolean isMissingClass(String name) {
+        if(missingClasses.contains(name)) {
+            missingCacheHits.incrementAndGet();
+            return true;
+        }
+        missingCacheMisses.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * 记录没有任何模块提供的类名. 存活的模块或延迟加载的模块声明了此类时不记录, 因此重新打开 Jar 文件失败、
+     * 请求的类加载器正在卸载等暂时的失败不会被缓存.
+     *
+     * @param requester 查找失败的模块类加载器
+     */
+    void setMissingClass(String name, JavaModuleClassLoader requester) {
+        if(requester.isClosed() || requester.getEntries().contains(name) || isProvided(name))
+            return;
+        if(missingClasses.size() >= MISSING_CACHE_SIZE)
+            missingClasses.clear();
+        missingClasses.add(name);
+        if(isProvided(name)) // 与同时添加的模块竞争, 添加模块时先登记类名再清空缓存
+            missingClasses.remove(name);
+    }
+
+    private boolean isProvided(String name) {
+        return classOwners.containsKey(name) || lazyOwners.containsKey(name);
+    }
+
+    public long getMissingCacheHits() {
+        return missingCacheHits.get();
+    }
+
+    public long getMissingCacheMisses() {
+        return missingCacheMisses.get();
+    }
+
+    public int getMissingCacheSize() {
+        return missingClasses.size();
+    }
+
+    @Override
+    public String getModuleName(String className) {
+        Class<?> clazz = classes.get(className);
+        ClassLoader classLoader = clazz != null ? clazz.getClassLoader() : null;
+        return classLoader instanceof JavaModuleClassLoader ? ((JavaModuleClassLoader) classLoader).getModuleName() : null;
+    }
+
+    @Override
+    public Map<String, Integer> getLoadedClassCounts() {
+        Map<String, Integer> counts = new HashMap<>();
+        for(JavaModuleClassLoader loader : loaders)
+            counts.put(loader.getModuleName(), loader.getDefinedClassCount());
+        return counts;
+    }
+
+    /** 类由还没有实际加载的延迟模块提供时加载该模块 */
+    private JavaModuleClassLoader activateLazyOwner(String name) {
+        LazyJavaModule lazyModule = lazyOwners.get(name);
+        if(lazyModule == null)
+            return null;
+        try {
+            lazyModule.activate();
+        } catch (InvalidModuleException e) {
+            handlerException(e);
+            return null;
+        }
+        return classOwners.get(name);
+    }
+
+    private void addLoader(JavaModuleClassLoader loader) {
+        loaders.add(loader);
+        for(String name : loader.getEntries())
+            classOwners.putIfAbsent(name, loader);
+        missingClasses.clear(); // 新的模块可能提供之前未找到的类
+    }
+
+    private void removeLoader(JavaModuleClassLoader loader) {
+        loaders.remove(loader);
+        for(String name : loader.getEntries()) {
+            if(!classOwners.remove(name, loader))
+                continue;
+            for(JavaModuleClassLoader other : loaders) // 交给其他同样提供此类的模块
+                if(other.getEntries().contains(name)) {
+                    classOwners.putIfAbsent(name, other);
+                    break;
+                }
+        }
     }
 
     void setClass(String name, Class<?> clazz) {
-        if(!classes.containsKey(name))
-            classes.put(name, clazz);
+        classes.putIfAbsent(name, clazz);
     }
 
-    private void removeClass(String name) {
-        classes.remove(name);
+    private void removeClasses(JavaModuleClassLoader loader) {
+        for(String name : loader.getClasses()) {
+            Class<?> clazz = classes.get(name);
+            if(clazz != null && clazz.getClassLoader() == loader)
+                classes.remove(name, clazz);
+        }
+    }
+
+    private static void closeQuietly(JarFile jarFile) {
+        if(jarFile != null) try {
+            jarFile.close();
+        } catch (Exception e) {
+        }
     }
 }
@@ -18,11 +18,41 @@
 
 package com.minecraft.moonlake.module.java;
 
+import com.minecraft.moonlake.module.Module;
 import com.minecraft.moonlake.module.SimpleModuleManager;
 
+import java.io.File;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+
 public final class JavaModuleManager extends SimpleModuleManager {
 
     public JavaModuleManager() {
         super(new JavaModuleLoaderFactory());
     }
+
+    public JavaModuleManager(Executor executor) {
+        super(new JavaModuleLoaderFactory(), executor);
+        if(executor != null)
+            ((JavaModuleLoader) getLoader()).setPreloadExecutor(executor);
+    }
+
+    @Override
+    public Module[] loadModules(File rootDir) {
+        JavaModuleLoader loader = (JavaModuleLoader) getLoader();
+        File[] moduleFiles = rootDir != null && loader.isVerify() ? rootDir.listFiles((dir, name) -> name.endsWith(".jar")) : null;
+        if(moduleFiles != null)
+            loader.computeDigests(Arrays.asList(moduleFiles)); // 在加载之前并行计算变化的模块文件的摘要
+        Module[] modules = super.loadModules(rootDir);
+        loader.saveIndexCache();
+        return modules;
+    }
+
+    @Override
+    public void disableModules() {
+        super.disableModules();
+        JavaModuleLoader loader = (JavaModuleLoader) getLoader();
+        if(loader.isTraining())
+            loader.saveIndexCache(); // 写入训练运行记录的类
+    }
 }
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.minecraft.moonlake.module.java;
+
+import com.minecraft.moonlake.module.LazyModule;
+import com.minecraft.moonlake.module.Module;
+import com.minecraft.moonlake.module.ModuleBase;
+import com.minecraft.moonlake.module.ModuleDescription;
+import com.minecraft.moonlake.module.ModuleLoader;
+import com.minecraft.moonlake.module.ModuleLogger;
+import com.minecraft.moonlake.module.exception.InvalidModuleException;
+
+import java.io.File;
+import java.util.Set;
+import java.util.logging.Logger;
+
+final class LazyJavaModule extends ModuleBase implements LazyModule {
+
+    private final JavaModuleLoader loader;
+    private final ModuleDescription description;
+    private final File moduleFile;
+    private final Set<String> classes;
+    private volatile JavaModule module;
+    private volatile boolean enableRequested;
+    private volatile boolean unloaded;
+    private ModuleLogger logger;
+
+    LazyJavaModule(JavaModuleLoader loader, ModuleDescription description, File moduleFile, Set<String> classes) {
+        this.loader = loader;
+        this.description = description;
+        this.moduleFile = moduleFile;
+        this.classes = classes;
+    }
+
+    @Override
+    public boolean isActivated() {
+        return module != null;
+    }
+
+    @Override
+    public JavaModule getModule() {
+        return module;
+    }
+
+    @Override
+    public synchronized JavaModule activate() throws InvalidModuleException {
+        if(module != null)
+            return module;
+        if(unloaded)
+            throw new InvalidModuleException("延迟加载的模块 '" + getName() + "' 已经被卸载.");
+        // 加载期间主类的查找不能再回到此延迟模块
+        loader.removeLazyModule(this);
+        try {
+            module = (JavaModule) loader.loadModule(moduleFile, false);
+        } catch (InvalidModuleException e) {
+            loader.addLazyModule(this);
+            throw e;
+        }
+        if(enableRequested)
+            loader.enableModule(module);
+        return module;
+    }
+
+    void setEnableRequested(boolean enableRequested) {
+        this.enableRequested = enableRequested;
+    }
+
+    synchronized void setUnloaded() {
+        unloaded = true;
+    }
+
+    File getFile() {
+        return moduleFile;
+    }
+
+    /** 此模块 Jar 文件内所有类的名称 */
+    Set<String> getClasses() {
+        return classes;
+    }
+
+    @Override
+    public ModuleDescription getDescription() {
+        return description;
+    }
+
+    @Override
+    public synchronized Logger getLogger() {
+        Module module = this.module;
+        if(module != null)
+            return module.getLogger();
+        if(logger == null)
+            logger = new ModuleLogger(this);
+        return logger;
+    }
+
+    @Override
+    public ModuleLoader getLoader() {
+        return loader;
+    }
+
+    @Override
+    public void onLoad() {
+    }
+
+    @Override
+    public void onEnable() {
+    }
+
+    @Override
+    public void onDisable() {
+    }
+
+    @Override
+    public boolean isEnable() {
+        Module module = this.module;
+        return module != null && module.isEnable();
+    }
+}
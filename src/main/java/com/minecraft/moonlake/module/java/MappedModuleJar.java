@@ -0,0 +1,247 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.minecraft.moonlake.module.java;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * 将模块 Jar 文件映射到内存 (较小的文件直接读入堆内存) 并解析中央目录的只读 Zip 读取器.
+ * 不压缩存储的条目直接返回文件内容的视图, 压缩的条目解压到新的缓冲区. 不支持 Zip64、加密和分卷的文件, 打开时抛出 ZipException.
+ * <p>
+ * 映射的文件在被原地修改或截断后访问会出错, 因此替换模块文件时应写入新文件后再移动.
+ */
+final class MappedModuleJar {
+
+    /** 小于此大小的文件读入堆内存而不是映射 */
+    static final int BUFFER_THRESHOLD = 1024 * 1024;
+
+    private static final int LOCAL_HEADER = 0x04034B50;
+    private static final int CENTRAL_HEADER = 0x02014B50;
+    private static final int END_HEADER = 0x06054B50;
+    private static final int ZIP64_END_LOCATOR = 0x07064B50;
+    private static final int END_SIZE = 22;
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+
+    private final ByteBuffer buffer; // 小端序, 只使用绝对位置读取
+    private final Map<String, Entry> entries;
+    private final boolean signed;
+    private volatile byte[] digest;
+
+    private MappedModuleJar(ByteBuffer buffer, Map<String, Entry> entries, boolean signed) {
+        this.buffer = buffer;
+        this.entries = entries;
+        this.signed = signed;
+    }
+
+    static MappedModuleJar open(File file) throws IOException {
+        return open(file, false);
+    }
+
+    /**
+     * @param inMemory 为 true 时不论大小都读入堆内存, 之后文件被修改也不会影响读取的内容
+     */
+    static MappedModuleJar open(File file, boolean inMemory) throws IOException {
+        ByteBuffer buffer;
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r"); FileChannel channel = randomAccessFile.getChannel()) {
+            long size = channel.size();
+            if(size > Integer.MAX_VALUE)
+                throw new ZipException("模块 Jar 文件过大.");
+            if(inMemory || size < BUFFER_THRESHOLD) {
+                buffer = ByteBuffer.allocate((int) size);
+                while(buffer.hasRemaining())
+                    if(channel.read(buffer) == -1)
+                        throw new ZipException("模块 Jar 文件的长度不完整.");
+            } else {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0L, size); // 映射在通道关闭后仍然有效
+            }
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        int end = findEnd(buffer);
+        if(end >= 20 && buffer.getInt(end - 20) == ZIP64_END_LOCATOR)
+            throw new ZipException("不支持 Zip64 格式的模块 Jar 文件.");
+        if(u16(buffer, end + 4) != 0 || u16(buffer, end + 6) != 0)
+            throw new ZipException("不支持分卷的模块 Jar 文件.");
+        int count = u16(buffer, end + 10);
+        long offset = u32(buffer, end + 16);
+        if(offset + u32(buffer, end + 12) > end)
+            throw new ZipException("模块 Jar 文件的中央目录无效.");
+        Map<String, Entry> entries = new HashMap<>(count * 4 / 3 + 1);
+        boolean signed = false;
+        int position = (int) offset;
+        for(int i = 0; i < count; i++) {
+            if(position + 46 > end || buffer.getInt(position) != CENTRAL_HEADER)
+                throw new ZipException("模块 Jar 文件的中央目录无效.");
+            int flags = u16(buffer, position + 8);
+            int method = u16(buffer, position + 10);
+            long compressedSize = u32(buffer, position + 20);
+            long size = u32(buffer, position + 24);
+            int nameLength = u16(buffer, position + 28);
+            int extraLength = u16(buffer, position + 30);
+            int commentLength = u16(buffer, position + 32);
+            long localOffset = u32(buffer, position + 42);
+            if((flags & 1) != 0)
+                throw new ZipException("不支持加密的模块 Jar 文件.");
+            byte[] nameBytes = new byte[nameLength];
+            for(int j = 0; j < nameLength; j++)
+                nameBytes[j] = buffer.get(position + 46 + j);
+            String name = new String(nameBytes, StandardCharsets.UTF_8);
+            if(name.startsWith("META-INF/") && (name.endsWith(".SF") || name.endsWith(".RSA") || name.endsWith(".DSA") || name.endsWith(".EC")))
+                signed = true;
+            entries.put(name, new Entry(method, compressedSize, size, localOffset));
+            position += 46 + nameLength + extraLength + commentLength;
+        }
+        return new MappedModuleJar(buffer, entries, signed);
+    }
+
+    /** 是否包含签名文件, 签名的 Jar 需要由 JarFile 校验 */
+    boolean isSigned() {
+        return signed;
+    }
+
+    boolean contains(String name) {
+        return entries.containsKey(name);
+    }
+
+    Set<String> getNames() {
+        return Collections.unmodifiableSet(entries.keySet());
+    }
+
+    /** 整个文件内容的 SHA-256 摘要, 第一次调用时计算 */
+    byte[] getDigest() throws IOException {
+        byte[] digest = this.digest;
+        if(digest == null) {
+            ByteBuffer content = buffer.duplicate();
+            content.clear();
+            this.digest = digest = JavaModuleDigest.sha256(content);
+        }
+        return digest;
+    }
+
+    /**
+     * 获取条目的内容. 不压缩的条目返回文件内容的视图, 不会复制: 映射的文件为只读的直接缓冲区,
+     * 读入堆内存的文件为带有数组的缓冲区, 以便 defineClass 和 getInputStream 直接使用数组. 调用者不能修改返回的内容.
+     *
+     * @return 条目不存在时返回 null
+     */
+    ByteBuffer getBuffer(String name) throws IOException {
+        Entry entry = entries.get(name);
+        if(entry == null)
+            return null;
+        int position = dataOffset(entry);
+        if(entry.method == STORED) {
+            ByteBuffer slice = buffer.duplicate();
+            slice.limit(position + (int) entry.size);
+            slice.position(position);
+            return slice.slice();
+        }
+        if(entry.method != DEFLATED)
+            throw new ZipException("不支持的压缩方式 " + entry.method + " : " + name);
+        byte[] input = new byte[(int) entry.compressedSize + 1]; // 不带头部的解压需要一个额外的填充字节
+        ByteBuffer compressed = buffer.duplicate();
+        compressed.position(position);
+        compressed.get(input, 0, (int) entry.compressedSize);
+        byte[] output = new byte[(int) entry.size];
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(input);
+            int offset = 0;
+            while(offset < output.length) {
+                int read = inflater.inflate(output, offset, output.length - offset);
+                if(read == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary()))
+                    break;
+                offset += read;
+            }
+            if(offset != output.length)
+                throw new ZipException("模块 Jar 文件条目 '" + name + "' 的长度不完整.");
+        } catch (DataFormatException e) {
+            throw new ZipException("模块 Jar 文件条目 '" + name + "' 无法解压: " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+        return ByteBuffer.wrap(output);
+    }
+
+    InputStream getInputStream(String name) throws IOException {
+        ByteBuffer content = getBuffer(name);
+        if(content == null)
+            return null;
+        if(content.hasArray())
+            return new ByteArrayInputStream(content.array(), content.arrayOffset() + content.position(), content.remaining());
+        byte[] bytes = new byte[content.remaining()];
+        content.get(bytes);
+        return new ByteArrayInputStream(bytes);
+    }
+
+    private int dataOffset(Entry entry) throws ZipException {
+        int position = (int) entry.localOffset;
+        if(position + 30 > buffer.limit() || buffer.getInt(position) != LOCAL_HEADER)
+            throw new ZipException("模块 Jar 文件的本地文件头无效.");
+        int data = position + 30 + u16(buffer, position + 26) + u16(buffer, position + 28);
+        long compressedEnd = data + (entry.method == STORED ? entry.size : entry.compressedSize);
+        if(compressedEnd > buffer.limit())
+            throw new ZipException("模块 Jar 文件条目超出文件范围.");
+        return data;
+    }
+
+    private static int findEnd(ByteBuffer buffer) throws ZipException {
+        int minimum = Math.max(0, buffer.limit() - END_SIZE - 0xFFFF);
+        for(int position = buffer.limit() - END_SIZE; position >= minimum; position--)
+            if(buffer.getInt(position) == END_HEADER)
+                return position;
+        throw new ZipException("不是有效的模块 Jar 文件.");
+    }
+
+    private static int u16(ByteBuffer buffer, int index) {
+        return buffer.getShort(index) & 0xFFFF;
+    }
+
+    private static long u32(ByteBuffer buffer, int index) {
+        return buffer.getInt(index) & 0xFFFFFFFFL;
+    }
+
+    private static final class Entry {
+
+        private final int method;
+        private final long compressedSize;
+        private final long size;
+        private final long localOffset;
+
+        private Entry(int method, long compressedSize, long size, long localOffset) {
+            this.method = method;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localOffset = localOffset;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.minecraft.moonlake.module.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个模块的指标. 阶段耗时保存最近一次的值, 计数器在模块重新加载后继续累加.
+ */
+public final class ModuleMetrics {
+
+    private final String module;
+    private final AtomicLongArray phaseTimes;
+    private final LongAdder classesLoaded;
+    private final LongAdder crossModuleLookups;
+    private final LongAdder failures;
+
+    ModuleMetrics(String module) {
+        this.module = module;
+        this.phaseTimes = new AtomicLongArray(ModulePhase.values().length);
+        this.classesLoaded = new LongAdder();
+        this.crossModuleLookups = new LongAdder();
+        this.failures = new LongAdder();
+    }
+
+    public String getModule() {
+        return module;
+    }
+
+    public long getPhaseTime(ModulePhase phase, TimeUnit unit) {
+        return unit.convert(phaseTimes.get(phase.ordinal()), TimeUnit.NANOSECONDS);
+    }
+
+    /** 此模块的类加载器定义的类数量 */
+    public long getClassesLoaded() {
+        return classesLoaded.sum();
+    }
+
+    /** 此模块为其他模块提供类的次数 */
+    public long getCrossModuleLookups() {
+        return crossModuleLookups.sum();
+    }
+
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    void setPhaseTime(ModulePhase phase, long nanos) {
+        phaseTimes.set(phase.ordinal(), nanos);
+    }
+
+    public void incrementClassesLoaded() {
+        classesLoaded.increment();
+    }
+
+    public void incrementCrossModuleLookups() {
+        crossModuleLookups.increment();
+    }
+
+    void incrementFailures() {
+        failures.increment();
+    }
+}
@@ -0,0 +1,30 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.minecraft.moonlake.module.metrics;
+
+/**
+ * 模块指标的监听器, 用于将指标推送到外部监控. 回调在执行生命周期的线程中同步调用, 实现应尽快返回.
+ */
+public interface ModuleMetricsListener {
+
+    default void onPhase(String module, ModulePhase phase, long nanos) {
+    }
+
+    default void onFailure(String module, ModulePhase phase, Throwable cause) {
+    }
+}
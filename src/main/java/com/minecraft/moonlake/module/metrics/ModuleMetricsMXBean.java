@@ -0,0 +1,34 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.minecraft.moonlake.module.metrics;
+
+import java.util.Map;
+
+public interface ModuleMetricsMXBean {
+
+    String[] getModuleNames();
+
+    /** 模块各阶段最近一次的耗时, 单位毫秒 */
+    Map<String, Long> getPhaseTimes(String module);
+
+    long getClassesLoaded(String module);
+
+    long getCrossModuleLookups(String module);
+
+    long getFailures(String module);
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.minecraft.moonlake.module.metrics;
+
+import com.minecraft.moonlake.validate.Validate;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+public final class ModuleMetricsRegistry implements ModuleMetricsMXBean {
+
+    private final Map<String, ModuleMetrics> metrics;
+    private final List<ModuleMetricsListener> listeners;
+
+    public ModuleMetricsRegistry() {
+        this.metrics = new ConcurrentHashMap<>();
+        this.listeners = new CopyOnWriteArrayList<>();
+    }
+
+    /** 获取模块的指标, 模块没有任何记录时返回 null */
+    public ModuleMetrics getMetrics(String module) {
+        Validate.notNull(module, "模块名字对象不能为 null 值.");
+        return metrics.get(module);
+    }
+
+    public Collection<ModuleMetrics> getAllMetrics() {
+        return Collections.unmodifiableCollection(metrics.values());
+    }
+
+    public ModuleMetrics getOrCreate(String module) {
+        return metrics.computeIfAbsent(module, ModuleMetrics::new);
+    }
+
+    public void addListener(ModuleMetricsListener listener) {
+        Validate.notNull(listener, "监听器对象不能为 null 值.");
+        listeners.add(listener);
+    }
+
+    public void removeListener(ModuleMetricsListener listener) {
+        listeners.remove(listener);
+    }
+
+    public void recordPhase(String module, ModulePhase phase, long nanos) {
+        getOrCreate(module).setPhaseTime(phase, nanos);
+        for(ModuleMetricsListener listener : listeners)
+            listener.onPhase(module, phase, nanos);
+    }
+
+    public void recordFailure(String module, ModulePhase phase, Throwable cause) {
+        getOrCreate(module).incrementFailures();
+        for(ModuleMetricsListener listener : listeners)
+            listener.onFailure(module, phase, cause);
+    }
+
+    /**
+     * 注册到平台 MBeanServer, 对象名称为 com.minecraft.moonlake.module:type=ModuleMetrics,name=&lt;name&gt;
+     */
+    public ObjectName registerMBean(String name) throws JMException {
+        Validate.notNull(name, "名称对象不能为 null 值.");
+        ObjectName objectName = new ObjectName("com.minecraft.moonlake.module:type=ModuleMetrics,name=" + ObjectName.quote(name));
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        if(server.isRegistered(objectName))
+            server.unregisterMBean(objectName);
+        server.registerMBean(this, objectName);
+        return objectName;
+    }
+
+    @Override
+    public String[] getModuleNames() {
+        List<String> names = new ArrayList<>(metrics.keySet());
+        Collections.sort(names);
+        return names.toArray(new String[names.size()]);
+    }
+
+    @Override
+    public Map<String, Long> getPhaseTimes(String module) {
+        ModuleMetrics moduleMetrics = metrics.get(module);
+        Map<String, Long> phaseTimes = new LinkedHashMap<>();
+        if(moduleMetrics != null)
+            for(ModulePhase phase : ModulePhase.values())
+                phaseTimes.put(phase.name(), moduleMetrics.getPhaseTime(phase, TimeUnit.MILLISECONDS));
+        return phaseTimes;
+    }
+
+    @Override
+    public long getClassesLoaded(String module) {
+        ModuleMetrics moduleMetrics = metrics.get(module);
+        return moduleMetrics != null ? moduleMetrics.getClassesLoaded() : 0L;
+    }
+
+    @Override
+    public long getCrossModuleLookups(String module) {
+        ModuleMetrics moduleMetrics = metrics.get(module);
+        return moduleMetrics != null ? moduleMetrics.getCrossModuleLookups() : 0L;
+    }
+
+    @Override
+    public long getFailures(String module) {
+        ModuleMetrics moduleMetrics = metrics.get(module);
+        return moduleMetrics != null ? moduleMetrics.getFailures() : 0L;
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.minecraft.moonlake.module.metrics;
+
+public enum ModulePhase {
+
+    /** 读取模块描述与类索引 */
+    DESCRIPTION,
+    /** 校验模块文件的摘要 */
+    VERIFY,
+    /** 构建模块类加载器 */
+    CLASS_LOADER,
+    /** 初始化模块主类并创建模块实例 */
+    MAIN_CLASS,
+    /** 预加载上一次训练运行记录的类 */
+    PRELOAD,
+    /** 模块的 onEnable */
+    ENABLE,
+    /** 模块的 onDisable */
+    DISABLE,
+    ;
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package com.minecraft.moonlake.module.metrics;
+
+import java.util.Map;
+
+/**
+ * 将类归属到模块, 由模块加载器实现, 供 {@link ModuleResourceSampler} 按栈帧统计模块的资源使用.
+ */
+public interface ModuleResourceResolver {
+
+    /** 定义此类名的模块名称, 不是模块中的类时返回 null */
+    String getModuleName(String className);
+
+    /** 每个模块的类加载器当前定义的类数量 */
+    Map<String, Integer> getLoadedClassCounts();
+}
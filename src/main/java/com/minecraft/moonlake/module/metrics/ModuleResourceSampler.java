@@ -0,0 +1,237 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package com.minecraft.moonlake.module.metrics;
+
+import com.minecraft.moonlake.module.Module;
+import com.minecraft.moonlake.module.ModuleLifecycleListener;
+import com.minecraft.moonlake.validate.Validate;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * 按栈帧将线程的 CPU 时间和分配的字节数归属到模块的采样器. 每次采样获取所有线程的栈, 从栈顶开始第一个属于模块的类的栈帧决定线程归属的模块,
+ * 线程在两次采样之间使用的 CPU 时间和分配的字节数计入此模块. 这是统计意义上的归属, 采样间隔越短越准确, 开销也越大.
+ * <p>
+ * CPU 时间和分配的字节数分别需要 JVM 支持线程 CPU 时间和 {@code com.sun.management.ThreadMXBean}, 不支持时只记录采样次数.
+ * 模块关闭后移除它的资源使用.
+ */
+public final class ModuleResourceSampler implements ModuleLifecycleListener {
+
+    private static final Logger LOGGER = Logger.getLogger(ModuleResourceSampler.class.getName());
+
+    private final ModuleResourceResolver resolver;
+    private final ThreadMXBean threadBean;
+    private final com.sun.management.ThreadMXBean hotspotThreadBean;
+    private final boolean cpuTimeSupported;
+    private final Map<String, ModuleResourceUsage> usages;
+    private Map<Long, long[]> lastThreadTimes; // synchronized (this)
+    private volatile int maxDepth;
+    private ScheduledExecutorService executor;
+    private ScheduledFuture<?> future;
+    private volatile boolean failureLogged;
+
+    public ModuleResourceSampler(ModuleResourceResolver resolver) {
+        Validate.notNull(resolver, "资源归属对象不能为 null 值.");
+        this.resolver = resolver;
+        this.threadBean = ManagementFactory.getThreadMXBean();
+        this.hotspotThreadBean = threadBean instanceof com.sun.management.ThreadMXBean && ((com.sun.management.ThreadMXBean) threadBean).isThreadAllocatedMemorySupported()
+                ? (com.sun.management.ThreadMXBean) threadBean
+                : null;
+        this.cpuTimeSupported = threadBean.isThreadCpuTimeSupported();
+        this.usages = new ConcurrentHashMap<>();
+        this.lastThreadTimes = Collections.emptyMap();
+        this.maxDepth = 128;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * 设置每次采样获取的最大栈深度, 默认 128. 模块代码在更深的位置时线程不会被归属到模块.
+     */
+    public void setMaxDepth(int maxDepth) {
+        Validate.isTrue(maxDepth > 0, "栈深度必须大于 0.");
+        this.maxDepth = maxDepth;
+    }
+
+    /** 是否可以统计线程分配的字节数 */
+    public boolean isAllocatedBytesSupported() {
+        return hotspotThreadBean != null;
+    }
+
+    public boolean isCpuTimeSupported() {
+        return cpuTimeSupported;
+    }
+
+    /**
+     * 在守护线程中按固定间隔采样, 已经在采样时使用新的间隔.
+     */
+    public synchronized void start(long interval, TimeUnit unit) {
+        Validate.isTrue(interval > 0L, "采样间隔必须大于 0.");
+        Validate.notNull(unit, "时间单位对象不能为 null 值.");
+        if(cpuTimeSupported && !threadBean.isThreadCpuTimeEnabled())
+            threadBean.setThreadCpuTimeEnabled(true);
+        if(hotspotThreadBean != null && !hotspotThreadBean.isThreadAllocatedMemoryEnabled())
+            hotspotThreadBean.setThreadAllocatedMemoryEnabled(true);
+        if(executor == null)
+            executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "MoonLake-Module-Sampler");
+                thread.setDaemon(true);
+                return thread;
+            });
+        if(future != null)
+            future.cancel(false);
+        failureLogged = false;
+        future = executor.scheduleAtFixedRate(this::sampleQuietly, 0L, interval, unit);
+    }
+
+    public synchronized void stop() {
+        if(executor != null) {
+            executor.shutdown();
+            executor = null;
+            future = null;
+        }
+        lastThreadTimes = Collections.emptyMap(); // 重新开始时不计入停止期间的使用
+    }
+
+    public synchronized boolean isRunning() {
+        return executor != null;
+    }
+
+    private void sampleQuietly() {
+        try {
+            sample();
+        } catch (Exception e) { // 继续下一次采样, 每次开始采样后只记录第一次失败
+            if(!failureLogged) {
+                failureLogged = true;
+                LOGGER.log(Level.WARNING, "模块资源采样时发生异常, 之后的异常不再记录.", e);
+            }
+        }
+    }
+
+    @Override
+    public void onModuleDisabled(Module module) {
+        usages.remove(module.getName());
+    }
+
+    /**
+     * 立即采样一次. 每个线程第一次被采样时只记录基准值.
+     */
+    public synchronized void sample() {
+        long[] ids = threadBean.getAllThreadIds();
+        ThreadInfo[] infos = threadBean.getThreadInfo(ids, maxDepth);
+        long[] cpuTimes = hotspotThreadBean != null && cpuTimeSupported ? hotspotThreadBean.getThreadCpuTime(ids) : null;
+        long[] allocatedBytes = hotspotThreadBean != null ? hotspotThreadBean.getThreadAllocatedBytes(ids) : null;
+        long currentId = Thread.currentThread().getId();
+        Map<String, String> resolved = new HashMap<>(); // 类名到模块名, 不是模块的类为空字符串
+        Map<String, Integer> threads = new HashMap<>();
+        Map<Long, long[]> threadTimes = new HashMap<>(ids.length * 2);
+        for(int i = 0; i < ids.length; i++) {
+            ThreadInfo info = infos[i];
+            if(info == null || ids[i] == currentId) // 线程已经结束
+                continue;
+            long cpuTime = cpuTimes != null ? cpuTimes[i] : cpuTimeSupported ? threadBean.getThreadCpuTime(ids[i]) : -1L;
+            long allocated = allocatedBytes != null ? allocatedBytes[i] : -1L;
+            long[] last = lastThreadTimes.get(ids[i]);
+            threadTimes.put(ids[i], new long[] { cpuTime, allocated });
+            String module = resolve(info.getStackTrace(), resolved);
+            if(module == null)
+                continue;
+            ModuleResourceUsage usage = getOrCreate(module);
+            threads.merge(module, 1, Integer::sum);
+            if(info.getThreadState() == Thread.State.RUNNABLE)
+                usage.incrementSamples();
+            if(last != null) {
+                if(cpuTime >= 0L && last[0] >= 0L && cpuTime > last[0])
+                    usage.addCpuTime(cpuTime - last[0]);
+                if(allocated >= 0L && last[1] >= 0L && allocated > last[1])
+                    usage.addAllocatedBytes(allocated - last[1]);
+            }
+        }
+        lastThreadTimes = threadTimes;
+        Map<String, Integer> loadedClasses = resolver.getLoadedClassCounts();
+        for(Map.Entry<String, Integer> entry : loadedClasses.entrySet())
+            getOrCreate(entry.getKey());
+        for(ModuleResourceUsage usage : usages.values()) {
+            usage.setThreads(threads.getOrDefault(usage.getModule(), 0));
+            usage.setLoadedClasses(loadedClasses.getOrDefault(usage.getModule(), 0));
+        }
+    }
+
+    private String resolve(StackTraceElement[] stackTrace, Map<String, String> resolved) {
+        for(StackTraceElement element : stackTrace) {
+            String className = element.getClassName();
+            String module = resolved.get(className);
+            if(module == null) {
+                module = resolver.getModuleName(className);
+                if(module == null)
+                    module = "";
+                resolved.put(className, module);
+            }
+            if(!module.isEmpty())
+                return module;
+        }
+        return null;
+    }
+
+    private ModuleResourceUsage getOrCreate(String module) {
+        ModuleResourceUsage usage = usages.get(module);
+        if(usage == null)
+            usage = usages.computeIfAbsent(module, ModuleResourceUsage::new);
+        return usage;
+    }
+
+    /** 获取模块的资源使用, 模块没有被采样到时返回 null */
+    public ModuleResourceUsage getUsage(String module) {
+        Validate.notNull(module, "模块名字对象不能为 null 值.");
+        return usages.get(module);
+    }
+
+    public Collection<ModuleResourceUsage> getUsages() {
+        return Collections.unmodifiableCollection(usages.values());
+    }
+
+    /**
+     * 整个 JVM 的元空间使用字节数. 元空间没有按类加载器划分的统计, 模块之间可以通过 {@link ModuleResourceUsage#getLoadedClasses()} 比较.
+     *
+     * @return 没有元空间内存池时返回 -1
+     */
+    public static long getMetaspaceUsed() {
+        for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+            if("Metaspace".equals(pool.getName()))
+                return pool.getUsage().getUsed();
+        return -1L;
+    }
+}
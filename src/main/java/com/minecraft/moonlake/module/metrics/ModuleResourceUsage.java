@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package com.minecraft.moonlake.module.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个模块的资源使用. 累计值在模块重新加载后继续累加, 线程数和类数量为最近一次采样的值.
+ */
+public final class ModuleResourceUsage {
+
+    private final String module;
+    private final LongAdder cpuTime;
+    private final LongAdder allocatedBytes;
+    private final LongAdder samples;
+    private volatile int threads;
+    private volatile int loadedClasses;
+
+    ModuleResourceUsage(String module) {
+        this.module = module;
+        this.cpuTime = new LongAdder();
+        this.allocatedBytes = new LongAdder();
+        this.samples = new LongAdder();
+    }
+
+    public String getModule() {
+        return module;
+    }
+
+    /** 采样时正在执行此模块代码的线程在两次采样之间使用的 CPU 时间 */
+    public long getCpuTime(TimeUnit unit) {
+        return unit.convert(cpuTime.sum(), TimeUnit.NANOSECONDS);
+    }
+
+    /** 采样时正在执行此模块代码的线程在两次采样之间分配的字节数 */
+    public long getAllocatedBytes() {
+        return allocatedBytes.sum();
+    }
+
+    /** 线程处于运行状态并且正在执行此模块代码的采样次数 */
+    public long getSamples() {
+        return samples.sum();
+    }
+
+    /** 最近一次采样时正在执行此模块代码的线程数 */
+    public int getThreads() {
+        return threads;
+    }
+
+    /** 最近一次采样时此模块的类加载器定义的类数量 */
+    public int getLoadedClasses() {
+        return loadedClasses;
+    }
+
+    void addCpuTime(long nanos) {
+        cpuTime.add(nanos);
+    }
+
+    void addAllocatedBytes(long bytes) {
+        allocatedBytes.add(bytes);
+    }
+
+    void incrementSamples() {
+        samples.increment();
+    }
+
+    void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    void setLoadedClasses(int loadedClasses) {
+        this.loadedClasses = loadedClasses;
+    }
+
+    @Override
+    public String toString() {
+        return "ModuleResourceUsage{" +
+                "module='" + module + '\'' +
+                ", cpuTime=" + getCpuTime(TimeUnit.MILLISECONDS) + "ms" +
+                ", allocatedBytes=" + getAllocatedBytes() +
+                ", samples=" + getSamples() +
+                ", threads=" + threads +
+                ", loadedClasses=" + loadedClasses +
+                '}';
+    }
+}
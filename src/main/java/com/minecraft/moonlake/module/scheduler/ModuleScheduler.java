@@ -0,0 +1,333 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package com.minecraft.moonlake.module.scheduler;
+
+import com.minecraft.moonlake.module.Module;
+import com.minecraft.moonlake.module.ModuleLifecycleListener;
+import com.minecraft.moonlake.validate.Validate;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 模块管理器持有的任务调度器, 所有模块共用一个计时器线程和一个工作窃取线程池, 代替每个模块自己创建的线程池.
+ * <p>
+ * 同步任务在 {@link #setMainThreadExecutor(Executor) 主线程执行器} 中执行, 没有设置时在计时器线程中按顺序执行, 因此不能阻塞;
+ * 异步任务在线程池中执行, 线程池的线程数量默认等于处理器数量,
+ * 长时间阻塞的异步任务会占用线程池, 这类任务在 Java 21+ 可以改为使用虚拟线程执行.
+ * 重复任务按固定频率执行, 交给执行器的重复任务的上一次执行还没有结束时跳过这次执行.
+ * 模块关闭时自动取消它的所有任务, 并在限定时间内等待正在执行的任务结束.
+ */
+public final class ModuleScheduler implements ModuleLifecycleListener {
+
+    private static final boolean VIRTUAL_THREADS_SUPPORTED;
+    private static final Method NEW_VIRTUAL_THREAD_EXECUTOR;
+
+    static {
+        Method method = null;
+        boolean supported = false;
+        try {
+            method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            ((ExecutorService) method.invoke(null)).shutdown(); // Java 19 ~ 20 没有启用预览功能时抛出异常
+            supported = true;
+        } catch (Exception e) {
+            // 不支持虚拟线程
+        }
+        NEW_VIRTUAL_THREAD_EXECUTOR = supported ? method : null;
+        VIRTUAL_THREADS_SUPPORTED = supported;
+    }
+
+    private final ScheduledThreadPoolExecutor timer;
+    private final ForkJoinPool pool;
+    private final AtomicInteger taskIds;
+    private final Map<Integer, ModuleSchedulerTask> tasks;
+    private final Map<String, ModuleTaskStatistics> statistics;
+    private volatile ExecutorService virtualExecutor;
+    private volatile Executor mainThreadExecutor;
+    private volatile Thread timerThread;
+    private volatile long cancelTimeout;
+
+    public ModuleScheduler() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param parallelism 异步任务线程池的并行数
+     */
+    public ModuleScheduler(int parallelism) {
+        Validate.isTrue(parallelism > 0, "线程池的并行数必须大于 0.");
+        this.timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "MoonLake-Module-Scheduler");
+            thread.setDaemon(true);
+            timerThread = thread;
+            return thread;
+        });
+        this.timer.setRemoveOnCancelPolicy(true);
+        AtomicInteger threadId = new AtomicInteger();
+        this.pool = new ForkJoinPool(parallelism, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("MoonLake-Module-Async-" + threadId.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, null, true);
+        this.taskIds = new AtomicInteger();
+        this.tasks = new ConcurrentHashMap<>();
+        this.statistics = new ConcurrentHashMap<>();
+        this.cancelTimeout = TimeUnit.SECONDS.toNanos(1L);
+    }
+
+    /** 当前 Java 版本是否支持虚拟线程 */
+    public static boolean isVirtualThreadsSupported() {
+        return VIRTUAL_THREADS_SUPPORTED;
+    }
+
+    public boolean isUseVirtualThreads() {
+        return virtualExecutor != null;
+    }
+
+    /**
+     * 设置异步任务是否在虚拟线程中执行, 适用于阻塞 IO 较多的任务. 默认在工作窃取线程池中执行.
+     *
+     * @throws UnsupportedOperationException 如果当前 Java 版本不支持虚拟线程
+     */
+    public synchronized void setUseVirtualThreads(boolean useVirtualThreads) {
+        if(useVirtualThreads == isUseVirtualThreads())
+            return;
+        if(useVirtualThreads) {
+            if(!VIRTUAL_THREADS_SUPPORTED)
+                throw new UnsupportedOperationException("当前 Java 版本不支持虚拟线程.");
+            try {
+                virtualExecutor = (ExecutorService) NEW_VIRTUAL_THREAD_EXECUTOR.invoke(null);
+            } catch (Exception e) {
+                throw new UnsupportedOperationException("当前 Java 版本不支持虚拟线程.", e);
+            }
+        } else {
+            ExecutorService executor = virtualExecutor;
+            virtualExecutor = null;
+            executor.shutdown();
+        }
+    }
+
+    public long getCancelTimeout(TimeUnit unit) {
+        return unit.convert(cancelTimeout, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 设置模块关闭时等待正在执行的任务结束的最长时间, 默认 1 秒, 为 0 时不等待.
+     */
+    public void setCancelTimeout(long timeout, TimeUnit unit) {
+        Validate.isTrue(timeout >= 0L, "等待时间不能小于 0.");
+        this.cancelTimeout = unit.toNanos(timeout);
+    }
+
+    public Executor getMainThreadExecutor() {
+        return mainThreadExecutor;
+    }
+
+    /**
+     * 设置执行同步任务的执行器, 例如宿主程序主线程的任务队列. 为 null 时同步任务在计时器线程中执行.
+     */
+    public void setMainThreadExecutor(Executor mainThreadExecutor) {
+        this.mainThreadExecutor = mainThreadExecutor;
+    }
+
+    boolean hasMainThreadExecutor() {
+        return mainThreadExecutor != null;
+    }
+
+    /** 当前线程是否为调度器的计时器线程, 设置了主线程执行器时同步任务不在此线程中执行 */
+    public boolean isSchedulerThread() {
+        return Thread.currentThread() == timerThread;
+    }
+
+    public ModuleTask runTask(Module owner, Runnable task) {
+        return schedule(owner, task, true, 0L, 0L, TimeUnit.MILLISECONDS);
+    }
+
+    public ModuleTask runTaskAsync(Module owner, Runnable task) {
+        return schedule(owner, task, false, 0L, 0L, TimeUnit.MILLISECONDS);
+    }
+
+    public ModuleTask runTaskLater(Module owner, Runnable task, long delay, TimeUnit unit) {
+        return schedule(owner, task, true, delay, 0L, unit);
+    }
+
+    public ModuleTask runTaskLaterAsync(Module owner, Runnable task, long delay, TimeUnit unit) {
+        return schedule(owner, task, false, delay, 0L, unit);
+    }
+
+    public ModuleTask runTaskTimer(Module owner, Runnable task, long delay, long period, TimeUnit unit) {
+        Validate.isTrue(period > 0L, "重复任务的周期必须大于 0.");
+        return schedule(owner, task, true, delay, period, unit);
+    }
+
+    public ModuleTask runTaskTimerAsync(Module owner, Runnable task, long delay, long period, TimeUnit unit) {
+        Validate.isTrue(period > 0L, "重复任务的周期必须大于 0.");
+        return schedule(owner, task, false, delay, period, unit);
+    }
+
+    private ModuleTask schedule(Module owner, Runnable runnable, boolean sync, long delay, long period, TimeUnit unit) {
+        Validate.notNull(owner, "模块对象不能为 null 值.");
+        Validate.notNull(runnable, "任务对象不能为 null 值.");
+        Validate.notNull(unit, "时间单位对象不能为 null 值.");
+        Validate.isTrue(delay >= 0L, "任务的延迟不能小于 0.");
+        ModuleTaskStatistics statistics = getOrCreateStatistics(owner.getName());
+        ModuleSchedulerTask task = new ModuleSchedulerTask(this, taskIds.incrementAndGet(), owner, runnable, sync, unit.toNanos(period), statistics);
+        statistics.onScheduled();
+        tasks.put(task.getTaskId(), task);
+        if(!owner.isEnable()) { // 先加入任务表再检查, 与模块关闭时的取消不会遗漏任务
+            task.cancel();
+            throw new IllegalStateException("模块 '" + owner.getName() + "' 没有启用, 不能提交任务.");
+        }
+        try {
+            if(period > 0L)
+                task.setFuture(timer.scheduleAtFixedRate(task, delay, period, unit));
+            else if(!sync && delay == 0L)
+                task.dispatch();
+            else
+                task.setFuture(timer.schedule(task, delay, unit));
+        } catch (RejectedExecutionException e) {
+            task.cancel();
+            throw new IllegalStateException("模块调度器已经关闭.", e);
+        }
+        return task;
+    }
+
+    void executeSync(Runnable runnable) {
+        Executor mainThreadExecutor = this.mainThreadExecutor;
+        if(mainThreadExecutor != null)
+            mainThreadExecutor.execute(runnable);
+        else
+            timer.execute(runnable);
+    }
+
+    void executeAsync(Runnable runnable) {
+        ExecutorService virtualExecutor = this.virtualExecutor;
+        if(virtualExecutor != null) try {
+            virtualExecutor.execute(runnable);
+            return;
+        } catch (RejectedExecutionException e) {
+            // 已经切换回线程池
+        }
+        pool.execute(runnable);
+    }
+
+    void remove(ModuleSchedulerTask task) {
+        tasks.remove(task.getTaskId(), task);
+    }
+
+    public ModuleTask getTask(int taskId) {
+        return tasks.get(taskId);
+    }
+
+    /** 获取模块还没有完成或取消的任务 */
+    public List<ModuleTask> getTasks(Module owner) {
+        Validate.notNull(owner, "模块对象不能为 null 值.");
+        List<ModuleTask> result = new ArrayList<>();
+        for(ModuleSchedulerTask task : tasks.values())
+            if(task.getOwner().equals(owner))
+                result.add(task);
+        return result;
+    }
+
+    public boolean cancelTask(int taskId) {
+        ModuleSchedulerTask task = tasks.get(taskId);
+        return task != null && task.cancel();
+    }
+
+    /**
+     * 取消模块的所有任务, 不会等待正在执行的任务.
+     *
+     * @return 取消的任务数量
+     */
+    public int cancelTasks(Module owner) {
+        Validate.notNull(owner, "模块对象不能为 null 值.");
+        return cancel(owner).size();
+    }
+
+    private List<ModuleSchedulerTask> cancel(Module owner) {
+        List<ModuleSchedulerTask> cancelled = new ArrayList<>();
+        for(ModuleSchedulerTask task : tasks.values())
+            if(task.getOwner().equals(owner) && task.cancel())
+                cancelled.add(task);
+        return cancelled;
+    }
+
+    /** 获取模块的任务统计, 模块没有提交过任务时返回 null */
+    public ModuleTaskStatistics getStatistics(String module) {
+        return statistics.get(module);
+    }
+
+    public Collection<ModuleTaskStatistics> getStatistics() {
+        return Collections.unmodifiableCollection(statistics.values());
+    }
+
+    private ModuleTaskStatistics getOrCreateStatistics(String module) {
+        ModuleTaskStatistics result = statistics.get(module);
+        if(result == null)
+            result = statistics.computeIfAbsent(module, ModuleTaskStatistics::new);
+        return result;
+    }
+
+    @Override
+    public void onModuleDisabled(Module module) {
+        List<ModuleSchedulerTask> cancelled = cancel(module);
+        long timeout = cancelTimeout;
+        if(cancelled.isEmpty() || timeout <= 0L)
+            return;
+        long deadline = System.nanoTime() + timeout;
+        int running = 0;
+        try {
+            for(ModuleSchedulerTask task : cancelled)
+                if(!task.awaitRunning(deadline))
+                    running++;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        if(running > 0)
+            module.getLogger().warning("模块关闭后仍有 " + running + " 个任务没有执行完成.");
+    }
+
+    /** 取消所有任务并关闭线程 */
+    public void shutdown() {
+        for(ModuleSchedulerTask task : tasks.values())
+            task.cancel();
+        timer.shutdown();
+        pool.shutdown();
+        ExecutorService virtualExecutor = this.virtualExecutor;
+        if(virtualExecutor != null)
+            virtualExecutor.shutdown();
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package com.minecraft.moonlake.module.scheduler;
+
+import com.minecraft.moonlake.module.Module;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+
+final class ModuleSchedulerTask implements ModuleTask, Runnable {
+
+    private final ModuleScheduler scheduler;
+    private final int taskId;
+    private final Module owner;
+    private final Runnable task;
+    private final boolean sync;
+    private final long period;
+    private final ModuleTaskStatistics statistics;
+    private final AtomicBoolean cancelled;
+    private final AtomicBoolean done;
+    private final AtomicBoolean running; // 交给执行器的重复任务的上一次执行还没有结束时跳过这次执行
+    private volatile Future<?> future;
+    private Thread runner; // synchronized (this)
+
+    ModuleSchedulerTask(ModuleScheduler scheduler, int taskId, Module owner, Runnable task, boolean sync, long period, ModuleTaskStatistics statistics) {
+        this.scheduler = scheduler;
+        this.taskId = taskId;
+        this.owner = owner;
+        this.task = task;
+        this.sync = sync;
+        this.period = period;
+        this.statistics = statistics;
+        this.cancelled = new AtomicBoolean();
+        this.done = new AtomicBoolean();
+        this.running = new AtomicBoolean();
+    }
+
+    @Override
+    public int getTaskId() {
+        return taskId;
+    }
+
+    @Override
+    public Module getOwner() {
+        return owner;
+    }
+
+    @Override
+    public boolean isSync() {
+        return sync;
+    }
+
+    @Override
+    public boolean isRepeating() {
+        return period > 0L;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return cancelled.get();
+    }
+
+    @Override
+    public boolean cancel() {
+        if(!cancelled.compareAndSet(false, true))
+            return false;
+        Future<?> future = this.future;
+        if(future != null)
+            future.cancel(false);
+        finish(true);
+        return true;
+    }
+
+    void setFuture(Future<?> future) {
+        this.future = future;
+        if(cancelled.get()) // 在设置之前已经被取消
+            future.cancel(false);
+    }
+
+    /** 由计时器线程调用, 没有主线程执行器的同步任务直接执行, 其他任务交给对应的执行器 */
+    @Override
+    public void run() {
+        if(cancelled.get())
+            return;
+        if(sync && !scheduler.hasMainThreadExecutor())
+            execute();
+        else
+            dispatch();
+    }
+
+    void dispatch() {
+        if(!running.compareAndSet(false, true))
+            return;
+        Runnable runnable = () -> {
+            try {
+                execute();
+            } finally {
+                running.set(false);
+            }
+        };
+        try {
+            if(sync)
+                scheduler.executeSync(runnable);
+            else
+                scheduler.executeAsync(runnable);
+        } catch (RuntimeException e) {
+            running.set(false);
+            throw e;
+        }
+    }
+
+    private void execute() {
+        synchronized (this) { // 与取消后的 awaitRunning 互斥: 要么看到取消, 要么发布执行线程后被等待
+            if(cancelled.get())
+                return;
+            runner = Thread.currentThread();
+        }
+        statistics.onStart();
+        boolean failed = false;
+        try {
+            task.run();
+        } catch (Throwable e) {
+            failed = true;
+            owner.getLogger().log(Level.SEVERE, "执行模块 '" + owner.getName() + "' 的任务 #" + taskId + " 时发生异常.", e);
+        } finally {
+            statistics.onFinish(failed);
+            synchronized (this) {
+                runner = null;
+                notifyAll();
+            }
+            if(period <= 0L)
+                finish(false);
+        }
+    }
+
+    private void finish(boolean cancel) {
+        if(done.compareAndSet(false, true)) {
+            statistics.onDone(cancel);
+            scheduler.remove(this);
+        }
+    }
+
+    /**
+     * 等待正在进行的执行结束. 当前线程正在执行此任务时直接返回.
+     *
+     * @return 在截止时间之前没有结束时返回 false
+     */
+    synchronized boolean awaitRunning(long deadline) throws InterruptedException {
+        while(runner != null && runner != Thread.currentThread()) {
+            long remaining = deadline - System.nanoTime();
+            if(remaining <= 0L)
+                return false;
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "ModuleTask{" +
+                "id=" + taskId +
+                ", owner=" + owner.getName() +
+                ", sync=" + sync +
+                ", period=" + period +
+                ", cancelled=" + cancelled.get() +
+                '}';
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package com.minecraft.moonlake.module.scheduler;
+
+import com.minecraft.moonlake.module.Module;
+
+/**
+ * 模块调度器中的任务
+ */
+public interface ModuleTask {
+
+    int getTaskId();
+
+    Module getOwner();
+
+    /** 是否在主线程执行器 (没有设置时为调度器的计时器线程) 中按顺序执行 */
+    boolean isSync();
+
+    boolean isRepeating();
+
+    /** 任务是否已经取消. 正在执行的任务不会被中断, 长时间运行的任务应该检查此状态 */
+    boolean isCancelled();
+
+    /** 取消任务, 已经开始的这次执行会继续完成 */
+    boolean cancel();
+}
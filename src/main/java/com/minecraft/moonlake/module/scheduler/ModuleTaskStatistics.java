@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package com.minecraft.moonlake.module.scheduler;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个模块的任务统计. 计数器在模块重新加载后继续累加.
+ */
+public final class ModuleTaskStatistics {
+
+    private final String module;
+    private final LongAdder scheduled;
+    private final LongAdder executions;
+    private final LongAdder failures;
+    private final LongAdder cancelled;
+    private final AtomicInteger pending;
+    private final AtomicInteger running;
+
+    ModuleTaskStatistics(String module) {
+        this.module = module;
+        this.scheduled = new LongAdder();
+        this.executions = new LongAdder();
+        this.failures = new LongAdder();
+        this.cancelled = new LongAdder();
+        this.pending = new AtomicInteger();
+        this.running = new AtomicInteger();
+    }
+
+    public String getModule() {
+        return module;
+    }
+
+    /** 提交的任务数量 */
+    public long getScheduled() {
+        return scheduled.sum();
+    }
+
+    /** 任务的执行次数, 包括抛出异常的执行 */
+    public long getExecutions() {
+        return executions.sum();
+    }
+
+    /** 抛出异常的执行次数 */
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    public long getCancelled() {
+        return cancelled.sum();
+    }
+
+    /** 还没有完成或取消的任务数量 */
+    public int getPending() {
+        return pending.get();
+    }
+
+    /** 正在执行的任务数量 */
+    public int getRunning() {
+        return running.get();
+    }
+
+    void onScheduled() {
+        scheduled.increment();
+        pending.incrementAndGet();
+    }
+
+    void onStart() {
+        running.incrementAndGet();
+    }
+
+    void onFinish(boolean failed) {
+        running.decrementAndGet();
+        executions.increment();
+        if(failed)
+            failures.increment();
+    }
+
+    void onDone(boolean cancel) {
+        pending.decrementAndGet();
+        if(cancel)
+            cancelled.increment();
+    }
+
+    @Override
+    public String toString() {
+        return "ModuleTaskStatistics{" +
+                "module='" + module + '\'' +
+                ", scheduled=" + getScheduled() +
+                ", executions=" + getExecutions() +
+                ", failures=" + getFailures() +
+                ", cancelled=" + getCancelled() +
+                ", pending=" + getPending() +
+                ", running=" + getRunning() +
+                '}';
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.minecraft.moonlake.module.service;
+
+import com.minecraft.moonlake.module.Module;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 服务的句柄. 每个服务类型只有一个句柄, 可以保存在字段中; 提供者注册、注销或所属模块关闭后句柄自动指向当前优先级最高的提供者.
+ * 读取不加锁, 只是一次 volatile 读.
+ */
+public final class ModuleServiceHandle<S> {
+
+    private final Class<S> service;
+    private volatile List<ModuleServiceRegistration<S>> registrations; // 按优先级从高到低, 不可变
+    private volatile S provider;
+
+    ModuleServiceHandle(Class<S> service) {
+        this.service = service;
+        this.registrations = Collections.emptyList();
+    }
+
+    /** 获取优先级最高的提供者, 没有提供者时返回 null */
+    public S get() {
+        return provider;
+    }
+
+    public boolean isPresent() {
+        return provider != null;
+    }
+
+    public Class<S> getService() {
+        return service;
+    }
+
+    /** 所有注册的提供者, 按优先级从高到低 */
+    public List<ModuleServiceRegistration<S>> getRegistrations() {
+        return registrations;
+    }
+
+    synchronized void add(ModuleServiceRegistration<S> registration) {
+        List<ModuleServiceRegistration<S>> list = new ArrayList<>(registrations.size() + 1);
+        list.addAll(registrations);
+        int index = 0;
+        while(index < list.size() && list.get(index).getPriority() >= registration.getPriority())
+            index++; // 相同优先级先注册的优先
+        list.add(index, registration);
+        publish(list);
+    }
+
+    synchronized boolean remove(ModuleServiceRegistration<?> registration) {
+        List<ModuleServiceRegistration<S>> list = new ArrayList<>(registrations);
+        if(!list.remove(registration))
+            return false;
+        publish(list);
+        return true;
+    }
+
+    synchronized void removeOwner(Module owner) {
+        removeOwner(owner, null);
+    }
+
+    /**
+     * @param classLoader 模块的类加载器, 没有所属模块而提供者的类由它加载的注册也会被移除, 为 null 时不处理
+     */
+    synchronized void removeOwner(Module owner, ClassLoader classLoader) {
+        List<ModuleServiceRegistration<S>> list = new ArrayList<>(registrations);
+        if(list.removeIf(registration -> registration.getOwner() == owner
+                || classLoader != null && registration.getOwner() == null && registration.getProvider().getClass().getClassLoader() == classLoader))
+            publish(list);
+    }
+
+    /** 服务类型的模块关闭后移除所有提供者, 保存着句柄的地方不会再获得提供者 */
+    synchronized void clear() {
+        publish(Collections.emptyList());
+    }
+
+    private void publish(List<ModuleServiceRegistration<S>> list) {
+        registrations = Collections.unmodifiableList(list);
+        provider = list.isEmpty() ? null : list.get(0).getProvider();
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.minecraft.moonlake.module.service;
+
+import com.minecraft.moonlake.module.Module;
+
+/**
+ * 服务提供者的注册信息
+ */
+public final class ModuleServiceRegistration<S> {
+
+    private final Module owner;
+    private final Class<S> service;
+    private final S provider;
+    private final int priority;
+
+    ModuleServiceRegistration(Module owner, Class<S> service, S provider, int priority) {
+        this.owner = owner;
+        this.service = service;
+        this.provider = provider;
+        this.priority = priority;
+    }
+
+    /** 注册服务的模块, 没有所属模块时为 null */
+    public Module getOwner() {
+        return owner;
+    }
+
+    public Class<S> getService() {
+        return service;
+    }
+
+    public S getProvider() {
+        return provider;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    @Override
+    public String toString() {
+        return "ModuleServiceRegistration{" +
+                "service=" + service.getName() +
+                ", provider=" + provider +
+                ", priority=" + priority +
+                ", owner=" + (owner != null ? owner.getName() : null) +
+                '}';
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.minecraft.moonlake.module.service;
+
+import com.minecraft.moonlake.module.Module;
+import com.minecraft.moonlake.module.ModuleLifecycleListener;
+import com.minecraft.moonlake.validate.Validate;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 模块之间的服务注册表. 模块以服务类型注册提供者, 其他模块通过服务类型获取优先级最高的提供者而不需要按名称查找模块.
+ * 模块关闭时自动注销它注册的所有提供者, 并移除它定义的服务类型的句柄.
+ */
+public final class ModuleServiceRegistry implements ModuleLifecycleListener {
+
+    private final Map<Class<?>, ModuleServiceHandle<?>> handles;
+
+    public ModuleServiceRegistry() {
+        this.handles = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * 注册没有指定所属模块的服务提供者. 提供者的类由模块加载时, 在该模块关闭时自动注销.
+     */
+    public <S> ModuleServiceRegistration<S> register(Class<S> service, S provider, int priority) {
+        return register(null, service, provider, priority);
+    }
+
+    /**
+     * @param owner 注册服务的模块, 模块关闭时自动注销
+     * @param priority 优先级, 越大越优先
+     */
+    public <S> ModuleServiceRegistration<S> register(Module owner, Class<S> service, S provider, int priority) {
+        Validate.notNull(service, "服务类型对象不能为 null 值.");
+        Validate.notNull(provider, "服务提供者对象不能为 null 值.");
+        Validate.isTrue(service.isInstance(provider), "服务提供者没有实现服务类型.");
+        ModuleServiceRegistration<S> registration = new ModuleServiceRegistration<>(owner, service, provider, priority);
+        getHandle(service).add(registration);
+        return registration;
+    }
+
+    public boolean unregister(ModuleServiceRegistration<?> registration) {
+        Validate.notNull(registration, "服务注册对象不能为 null 值.");
+        ModuleServiceHandle<?> handle = handles.get(registration.getService());
+        return handle != null && handle.remove(registration);
+    }
+
+    /** 注销模块注册的所有服务提供者 */
+    public void unregisterAll(Module owner) {
+        Validate.notNull(owner, "模块对象不能为 null 值.");
+        for(ModuleServiceHandle<?> handle : handles.values())
+            handle.removeOwner(owner);
+    }
+
+    /** 获取服务优先级最高的提供者, 没有提供者时返回 null */
+    @SuppressWarnings("unchecked")
+    public <S> S get(Class<S> service) {
+        ModuleServiceHandle<?> handle = handles.get(service);
+        return handle != null ? (S) handle.get() : null;
+    }
+
+    /**
+     * 获取服务的句柄. 同一个服务类型总是返回同一个句柄, 可以保存在字段中代替每次调用 {@link #get(Class)}.
+     */
+    @SuppressWarnings("unchecked")
+    public <S> ModuleServiceHandle<S> getHandle(Class<S> service) {
+        Validate.notNull(service, "服务类型对象不能为 null 值.");
+        ModuleServiceHandle<?> handle = handles.get(service);
+        if(handle == null)
+            handle = handles.computeIfAbsent(service, key -> new ModuleServiceHandle<>(key));
+        return (ModuleServiceHandle<S>) handle;
+    }
+
+    public <S> List<ModuleServiceRegistration<S>> getRegistrations(Class<S> service) {
+        return getHandle(service).getRegistrations();
+    }
+
+    @Override
+    public void onModuleDisabled(Module module) {
+        ClassLoader classLoader = getModuleClassLoader(module);
+        for(ModuleServiceHandle<?> handle : handles.values())
+            handle.removeOwner(module, classLoader);
+        if(classLoader == null)
+            return;
+        // 模块定义的服务类型的句柄引用着模块的类加载器, 需要移除
+        for(Iterator<ModuleServiceHandle<?>> iterator = handles.values().iterator(); iterator.hasNext();) {
+            ModuleServiceHandle<?> handle = iterator.next();
+            if(handle.getService().getClassLoader() == classLoader) {
+                iterator.remove();
+                handle.clear();
+            }
+        }
+    }
+
+    /** 获取模块自己的类加载器, 模块的类由宿主的类加载器加载时返回 null */
+    private static ClassLoader getModuleClassLoader(Module module) {
+        ClassLoader classLoader = module.getClass().getClassLoader();
+        for(ClassLoader host = Module.class.getClassLoader(); host != null; host = host.getParent())
+            if(host == classLoader)
+                return null;
+        return classLoader;
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package com.minecraft.moonlake.module;
+
+import com.minecraft.moonlake.module.exception.ModuleException;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ModuleDependencySorterTest {
+
+    private final Map<ModuleDescription, ModuleException> failures = new LinkedHashMap<>();
+
+    @Test
+    public void hardDependOrder() throws Exception {
+        List<List<String>> levels = sort(Collections.<String>emptySet(),
+                module("C", "depend=B"),
+                module("B", "depend=A"),
+                module("A", ""),
+                module("D", ""));
+        assertEquals(Arrays.asList(Arrays.asList("A", "D"), Collections.singletonList("B"), Collections.singletonList("C")), levels);
+        assertTrue(failures.isEmpty());
+    }
+
+    @Test
+    public void missingHardDependIsTransitive() throws Exception {
+        List<List<String>> levels = sort(Collections.<String>emptySet(),
+                module("A", "depend=Missing"),
+                module("B", "depend=A"),
+                module("C", "softdepend=A"));
+        assertEquals(Collections.singletonList(Collections.singletonList("C")), levels);
+        assertEquals(Arrays.asList("A", "B"), failedNames());
+    }
+
+    @Test
+    public void missingSoftDependIsIgnored() throws Exception {
+        List<List<String>> levels = sort(Collections.<String>emptySet(), module("A", "softdepend=Missing"));
+        assertEquals(Collections.singletonList(Collections.singletonList("A")), levels);
+        assertTrue(failures.isEmpty());
+    }
+
+    @Test
+    public void providedSatisfiesHardDepend() throws Exception {
+        List<List<String>> levels = sort(Collections.singleton("Core"), module("A", "depend=Core"));
+        assertEquals(Collections.singletonList(Collections.singletonList("A")), levels);
+        assertTrue(failures.isEmpty());
+    }
+
+    @Test
+    public void softDependAndLoadBeforeOrder() throws Exception {
+        List<List<String>> levels = sort(Collections.<String>emptySet(),
+                module("A", "softdepend=B"),
+                module("B", ""),
+                module("C", "loadbefore=B"));
+        assertEquals(Arrays.asList(Collections.singletonList("C"), Collections.singletonList("B"), Collections.singletonList("A")), levels);
+    }
+
+    @Test
+    public void softCycleIsBroken() throws Exception {
+        List<List<String>> levels = sort(Collections.<String>emptySet(),
+                module("A", "softdepend=B"),
+                module("B", "softdepend=A"));
+        assertEquals(Arrays.asList(Collections.singletonList("A"), Collections.singletonList("B")), levels);
+        assertTrue(failures.isEmpty());
+    }
+
+    @Test
+    public void hardCycleFails() throws Exception {
+        List<List<String>> levels = sort(Collections.<String>emptySet(),
+                module("A", "depend=B"),
+                module("B", "depend=A"),
+                module("C", ""));
+        assertEquals(Collections.singletonList(Collections.singletonList("C")), levels);
+        assertEquals(Arrays.asList("A", "B"), failedNames());
+    }
+
+    @Test
+    public void duplicateNameFails() throws Exception {
+        ModuleDescription first = module("A", "");
+        ModuleDescription second = module("A", "");
+        List<List<ModuleDescription>> levels = ModuleDependencySorter.sort(Arrays.asList(first, second), Function.identity(), Collections.<String>emptySet(), failures);
+        assertEquals(1, levels.size());
+        assertSame(first, levels.get(0).get(0));
+        assertTrue(failures.containsKey(second));
+    }
+
+    private List<List<String>> sort(Set<String> provided, ModuleDescription... modules) {
+        List<List<String>> names = new ArrayList<>();
+        for(List<ModuleDescription> level : ModuleDependencySorter.sort(Arrays.asList(modules), Function.identity(), provided, failures)) {
+            List<String> levelNames = new ArrayList<>();
+            for(ModuleDescription description : level)
+                levelNames.add(description.getName());
+            names.add(levelNames);
+        }
+        return names;
+    }
+
+    private List<String> failedNames() {
+        List<String> names = new ArrayList<>();
+        for(ModuleDescription description : failures.keySet())
+            names.add(description.getName());
+        Collections.sort(names);
+        return names;
+    }
+
+    private static ModuleDescription module(String name, String properties) throws Exception {
+        String content = "name=" + name + "\nmain=test." + name + "\nversion=1.0\n" + properties;
+        return new ModuleDescription(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)));
+    }
+}
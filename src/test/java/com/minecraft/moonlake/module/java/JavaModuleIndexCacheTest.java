@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package com.minecraft.moonlake.module.java;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.jar.JarFile;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class JavaModuleIndexCacheTest {
+
+    private File directory;
+    private File moduleFile;
+
+    @Before
+    public void init() throws Exception {
+        directory = Files.createTempDirectory("module-index").toFile();
+        moduleFile = new File(directory, "indexed.jar");
+        writeJar();
+    }
+
+    @After
+    public void close() throws Exception {
+        try (Stream<Path> stream = Files.walk(directory.toPath())) {
+            stream.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Test
+    public void roundTrip() throws Exception {
+        save();
+        JavaModuleIndexCache.Entry entry = JavaModuleIndexCache.load(directory).get(moduleFile);
+        assertNotNull(entry);
+        assertEquals("Indexed", entry.getDescription().getName());
+        assertEquals(new HashSet<>(Arrays.asList("indexed.Main", "indexed.api.Api", "Root")), entry.getClasses());
+        assertEquals(Arrays.asList("indexed.Main", "Root"), entry.getPreload());
+    }
+
+    @Test
+    public void staleModifiedTimeIgnored() throws Exception {
+        save();
+        assertTrue(moduleFile.setLastModified(moduleFile.lastModified() + 10000L));
+        assertNull(JavaModuleIndexCache.load(directory).get(moduleFile));
+    }
+
+    @Test
+    public void staleSizeIgnored() throws Exception {
+        save();
+        long lastModified = moduleFile.lastModified();
+        try (RandomAccessFile file = new RandomAccessFile(moduleFile, "rw")) {
+            file.setLength(file.length() + 1);
+        }
+        assertTrue(moduleFile.setLastModified(lastModified));
+        assertNull(JavaModuleIndexCache.load(directory).get(moduleFile));
+    }
+
+    @Test
+    public void corruptCacheDiscarded() throws Exception {
+        save();
+        File cacheFile = new File(directory, JavaModuleIndexCache.FILE_NAME);
+        try (RandomAccessFile file = new RandomAccessFile(cacheFile, "rw")) {
+            file.setLength(file.length() / 2);
+        }
+        assertNull(JavaModuleIndexCache.load(directory).get(moduleFile));
+    }
+
+    @Test
+    public void removedModuleDroppedOnSave() throws Exception {
+        save();
+        assertTrue(moduleFile.delete());
+        JavaModuleIndexCache.load(directory).save();
+        writeJar(); // 相同的内容和修改时间
+        assertNull(JavaModuleIndexCache.load(directory).get(moduleFile));
+    }
+
+    @Test
+    public void digestRoundTrip() throws Exception {
+        save();
+        JavaModuleIndexCache cache = JavaModuleIndexCache.load(directory);
+        byte[] digest = JavaModuleDigest.sha256(moduleFile);
+        assertArrayEquals(MappedModuleJar.open(moduleFile).getDigest(), digest);
+        cache.putDigest(moduleFile, JavaModuleDigest.stamp(moduleFile), digest);
+        cache.save();
+        assertArrayEquals(digest, JavaModuleIndexCache.load(directory).getDigest(moduleFile, JavaModuleDigest.stamp(moduleFile)));
+        assertNotNull(JavaModuleIndexCache.load(directory).get(moduleFile));
+    }
+
+    @Test
+    public void digestInvalidatedByRewrite() throws Exception {
+        JavaModuleIndexCache cache = JavaModuleIndexCache.load(directory);
+        cache.putDigest(moduleFile, JavaModuleDigest.stamp(moduleFile), JavaModuleDigest.sha256(moduleFile));
+        cache.save();
+        Thread.sleep(50L); // 状态改变时间的精度
+        // 原地写入相同长度的内容并恢复修改时间, 只有状态改变时间不同
+        long lastModified = moduleFile.lastModified();
+        Files.write(moduleFile.toPath(), Files.readAllBytes(moduleFile.toPath()));
+        assertTrue(moduleFile.setLastModified(lastModified));
+        assertNull(JavaModuleIndexCache.load(directory).getDigest(moduleFile, JavaModuleDigest.stamp(moduleFile)));
+    }
+
+    private void save() throws Exception {
+        JavaModuleIndexCache cache = JavaModuleIndexCache.load(directory);
+        try (JarFile jarFile = new JarFile(moduleFile)) {
+            cache.put(moduleFile, JavaModuleIndexCache.Entry.read(moduleFile, jarFile));
+        }
+        cache.putPreload(moduleFile, Arrays.asList("indexed.Main", "Root"));
+        cache.save();
+    }
+
+    private void writeJar() throws IOException {
+        try (ZipOutputStream output = new ZipOutputStream(new FileOutputStream(moduleFile))) {
+            output.putNextEntry(new ZipEntry("module.properties"));
+            output.write("name=Indexed\nmain=indexed.Main\nversion=1.0\n".getBytes(StandardCharsets.UTF_8));
+            for(String name : Arrays.asList("indexed/Main.class", "indexed/api/Api.class", "Root.class", "META-INF/versions/9/Skip.class")) {
+                output.putNextEntry(new ZipEntry(name));
+                output.write(new byte[] { (byte) 0xCA, (byte) 0xFE }); // 索引只需要条目名称
+            }
+        }
+        assertTrue(moduleFile.setLastModified(1500000000000L));
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package com.minecraft.moonlake.module.java;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MappedModuleJarTest {
+
+    private File jarFile;
+
+    @Before
+    public void init() throws Exception {
+        jarFile = File.createTempFile("mapped", ".jar");
+    }
+
+    @After
+    public void close() {
+        jarFile.delete();
+    }
+
+    @Test
+    public void storedEntryInHeapHasArray() throws Exception {
+        writeJar(0);
+        MappedModuleJar mappedJar = MappedModuleJar.open(jarFile);
+        ByteBuffer stored = mappedJar.getBuffer("stored.txt");
+        assertTrue(stored.hasArray()); // defineClass 直接使用数组而不是复制
+        assertEquals("stored", read(stored));
+        assertEquals("deflated", read(mappedJar.getBuffer("deflated.txt")));
+        assertEquals("stored", read(mappedJar.getInputStream("stored.txt")));
+        assertNull(mappedJar.getBuffer("missing.txt"));
+    }
+
+    @Test
+    public void storedEntryInMappedFileIsReadOnly() throws Exception {
+        writeJar(MappedModuleJar.BUFFER_THRESHOLD);
+        MappedModuleJar mappedJar = MappedModuleJar.open(jarFile);
+        ByteBuffer stored = mappedJar.getBuffer("stored.txt");
+        assertTrue(stored.isDirect());
+        assertTrue(stored.isReadOnly());
+        assertFalse(stored.hasArray());
+        assertEquals("stored", read(stored));
+        assertEquals("stored", read(mappedJar.getInputStream("stored.txt")));
+    }
+
+    private void writeJar(int padding) throws IOException {
+        try (ZipOutputStream output = new ZipOutputStream(new FileOutputStream(jarFile))) {
+            if(padding > 0)
+                putStored(output, "padding.bin", new byte[padding]);
+            putStored(output, "stored.txt", "stored".getBytes(StandardCharsets.UTF_8));
+            output.putNextEntry(new ZipEntry("deflated.txt"));
+            output.write("deflated".getBytes(StandardCharsets.UTF_8));
+            output.closeEntry();
+        }
+    }
+
+    private static void putStored(ZipOutputStream output, String name, byte[] content) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        ZipEntry entry = new ZipEntry(name);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(content.length);
+        entry.setCrc(crc.getValue());
+        output.putNextEntry(entry);
+        output.write(content);
+        output.closeEntry();
+    }
+
+    private static String read(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static String read(InputStream input) throws IOException {
+        byte[] bytes = new byte[64];
+        int length = input.read(bytes);
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package com.minecraft.moonlake.module.test;
+
+import com.minecraft.moonlake.module.AsyncModuleLogHandler;
+import com.minecraft.moonlake.module.AsyncModuleLogHandler.OverflowPolicy;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AsyncModuleLogHandlerTest {
+
+    @Test
+    public void recordsKeepOrder() throws Exception {
+        CapturingHandler target = new CapturingHandler(null);
+        AsyncModuleLogHandler handler = new AsyncModuleLogHandler(64, OverflowPolicy.BLOCK, target);
+        List<Thread> producers = new ArrayList<>();
+        for(int i = 0; i < 4; i++) {
+            String producer = "producer" + i;
+            producers.add(new Thread(() -> {
+                for(int j = 0; j < 500; j++)
+                    handler.publish(new LogRecord(Level.INFO, producer + ":" + j));
+            }));
+        }
+        producers.forEach(Thread::start);
+        for(Thread producer : producers)
+            producer.join();
+        handler.flush();
+        assertEquals(2000, target.records.size());
+        assertEquals(0L, handler.getDroppedCount());
+        int[] next = new int[4];
+        for(LogRecord record : target.records) {
+            String[] message = record.getMessage().split(":");
+            int producer = message[0].charAt(message[0].length() - 1) - '0';
+            assertEquals(next[producer]++, Integer.parseInt(message[1])); // 每个线程的记录保持顺序
+        }
+        handler.close();
+    }
+
+    @Test
+    public void flushWaitsForDrainThread() {
+        CapturingHandler target = new CapturingHandler(null);
+        AsyncModuleLogHandler handler = new AsyncModuleLogHandler(16, OverflowPolicy.DROP, target);
+        handler.flush(); // 还没有记录时不会启动后台线程
+        for(int i = 0; i < 10; i++)
+            handler.publish(new LogRecord(Level.INFO, "record" + i));
+        handler.flush();
+        assertEquals(10, target.records.size());
+        assertTrue(target.flushed > 0);
+        assertFalse(target.threads.contains(Thread.currentThread()));
+        handler.close();
+        handler.publish(new LogRecord(Level.INFO, "closed"));
+        assertEquals(10, target.records.size());
+    }
+
+    @Test
+    public void dropWhenFull() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CapturingHandler target = new CapturingHandler(release);
+        AsyncModuleLogHandler handler = new AsyncModuleLogHandler(4, OverflowPolicy.DROP, target);
+        stall(handler, target);
+        for(int i = 0; i < 7; i++)
+            handler.publish(new LogRecord(Level.INFO, "record" + i));
+        assertEquals(4, handler.size());
+        assertEquals(3L, handler.getDroppedCount());
+        release.countDown();
+        handler.flush();
+        assertEquals(5, target.records.size());
+        assertEquals("record3", target.records.get(4).getMessage());
+        handler.close();
+    }
+
+    @Test
+    public void blockWhenFull() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CapturingHandler target = new CapturingHandler(release);
+        AsyncModuleLogHandler handler = new AsyncModuleLogHandler(4, OverflowPolicy.BLOCK, target);
+        stall(handler, target);
+        CountDownLatch published = new CountDownLatch(1);
+        Thread producer = new Thread(() -> {
+            for(int i = 0; i < 8; i++)
+                handler.publish(new LogRecord(Level.INFO, "record" + i));
+            published.countDown();
+        });
+        producer.start();
+        assertFalse(published.await(200L, TimeUnit.MILLISECONDS)); // 缓冲区满时等待
+        release.countDown();
+        assertTrue(published.await(5L, TimeUnit.SECONDS));
+        handler.flush();
+        assertEquals(9, target.records.size());
+        assertEquals(0L, handler.getDroppedCount());
+        handler.close();
+    }
+
+    @Test
+    public void sampleWhenMoreThanHalfFull() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CapturingHandler target = new CapturingHandler(release);
+        AsyncModuleLogHandler handler = new AsyncModuleLogHandler(8, OverflowPolicy.SAMPLE, 8, target);
+        stall(handler, target);
+        for(int i = 0; i < 20; i++)
+            handler.publish(new LogRecord(Level.INFO, "record" + i));
+        // 前 4 条进入缓冲区, 之后每 8 条保留 1 条
+        assertEquals(6, handler.size());
+        assertEquals(14L, handler.getDroppedCount());
+        handler.publish(new LogRecord(Level.WARNING, "warning0"));
+        handler.publish(new LogRecord(Level.WARNING, "warning1"));
+        assertEquals(8, handler.size());
+        handler.publish(new LogRecord(Level.WARNING, "full"));
+        assertEquals(15L, handler.getDroppedCount());
+        release.countDown();
+        handler.flush();
+        assertEquals(9, target.records.size());
+        assertEquals("warning1", target.records.get(8).getMessage());
+        handler.close();
+    }
+
+    /** 让后台线程阻塞在第一条记录的输出上 */
+    private static void stall(AsyncModuleLogHandler handler, CapturingHandler target) throws InterruptedException {
+        handler.publish(new LogRecord(Level.INFO, "stall"));
+        assertTrue(target.entered.await(5L, TimeUnit.SECONDS));
+        assertEquals(0, handler.size());
+    }
+
+    private static final class CapturingHandler extends Handler {
+
+        private final List<LogRecord> records = new CopyOnWriteArrayList<>();
+        private final List<Thread> threads = new CopyOnWriteArrayList<>();
+        private final CountDownLatch entered = new CountDownLatch(1);
+        private final CountDownLatch release;
+        private volatile int flushed;
+
+        private CapturingHandler(CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        public void publish(LogRecord record) {
+            records.add(record);
+            threads.add(Thread.currentThread());
+            entered.countDown();
+            if(release != null) try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void flush() {
+            flushed++;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
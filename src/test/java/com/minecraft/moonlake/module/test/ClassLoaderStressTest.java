@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.minecraft.moonlake.module.test;
+
+import com.minecraft.moonlake.module.Module;
+import com.minecraft.moonlake.module.ModuleManager;
+import com.minecraft.moonlake.module.java.JavaModuleManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+
+public class ClassLoaderStressTest {
+
+    private static final int CLASS_COUNT = 200;
+    private static final int THREAD_COUNT = 8;
+    private static final int ROUNDS = 5;
+
+    private TestModules modules;
+    private ModuleManager moduleManager;
+
+    @Before
+    public void init() throws IOException {
+        modules = new TestModules();
+        moduleManager = new JavaModuleManager();
+    }
+
+    @Test(timeout = 120000L)
+    public void concurrentCrossModuleResolution() throws Exception {
+        // 模块 stressa 的类继承模块 stressb 的类, 模块 stressb 的类继承模块 stressa 的类
+        // 多个线程从两个方向同时解析, 按整个类加载器加锁时会互相等待而死锁
+        File modulesDir = generate();
+        for(int round = 0; round < ROUNDS; round++) {
+            resolve(modulesDir);
+            moduleManager.clearModules();
+        }
+    }
+
+    private void resolve(File modulesDir) throws Exception {
+        Module[] modules = moduleManager.loadModules(modulesDir);
+        assertEquals(2, modules.length);
+        Map<String, ClassLoader> loaders = new HashMap<>();
+        for(Module module : modules)
+            loaders.put(module.getName(), module.getClass().getClassLoader());
+        List<String> names = new ArrayList<>();
+        for(int i = 0; i < CLASS_COUNT; i++) {
+            names.add("stressa.X" + i);
+            names.add("stressb.Y" + i);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Map<String, Class<?>>>> futures = new ArrayList<>();
+        Map<String, Class<?>> expected;
+        try {
+            for(int i = 0; i < THREAD_COUNT; i++) {
+                List<String> order = new ArrayList<>(names);
+                Collections.shuffle(order, new Random(i));
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    Map<String, Class<?>> resolved = new HashMap<>();
+                    for(String name : order) {
+                        ClassLoader loader = loaders.get(name.startsWith("stressa.") ? "StressA" : "StressB");
+                        resolved.put(name, Class.forName(name, true, loader));
+                    }
+                    return resolved;
+                }));
+            }
+            start.countDown();
+            expected = futures.get(0).get();
+            for(Future<Map<String, Class<?>>> future : futures) {
+                Map<String, Class<?>> resolved = future.get();
+                for(String name : names)
+                    assertSame("类 '" + name + "' 被重复定义.", expected.get(name), resolved.get(name));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        for(String name : names) {
+            Class<?> clazz = expected.get(name);
+            assertNotNull(clazz);
+            assertSame(loaders.get(name.startsWith("stressa.") ? "StressA" : "StressB"), clazz.getClassLoader());
+        }
+    }
+
+    @After
+    public void close() throws IOException {
+        moduleManager.clearModules();
+        moduleManager = null;
+        modules.close();
+    }
+
+    /** 生成两个互相继承对方类的模块 Jar 文件, 返回模块目录 */
+    private File generate() throws IOException {
+        // 先生成只有 Base 的 stressa 供 stressb 编译, 再生成完整的 stressa 覆盖它
+        module("stressa", 0);
+        module("stressb", CLASS_COUNT);
+        module("stressa", CLASS_COUNT);
+        return modules.getModuleDir();
+    }
+
+    private void module(String name, int classCount) throws IOException {
+        String other = name.equals("stressa") ? "stressb" : "stressa";
+        String prefix = name.equals("stressa") ? "X" : "Y";
+        String moduleName = name.equals("stressa") ? "StressA" : "StressB";
+        List<String> sources = new ArrayList<>();
+        sources.add("package " + name + "; public class Main extends com.minecraft.moonlake.module.java.JavaModule { }");
+        sources.add("package " + name + "; public class Base { }");
+        for(int i = 0; i < classCount; i++)
+            sources.add("package " + name + "; public class " + prefix + i + " extends " + other + ".Base { }");
+        modules.module(name, "name=" + moduleName + "\nmain=" + name + ".Main\nversion=1.0\n", sources.toArray(new String[sources.size()]));
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package com.minecraft.moonlake.module.test;
+
+import com.minecraft.moonlake.module.Module;
+import com.minecraft.moonlake.module.java.JavaModuleManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class LazyModuleTest {
+
+    private TestModules modules;
+    private JavaModuleManager moduleManager;
+
+    @Before
+    public void init() throws Exception {
+        modules = new TestModules();
+        moduleManager = new JavaModuleManager();
+    }
+
+    @After
+    public void close() throws Exception {
+        moduleManager.close();
+        modules.close();
+    }
+
+    @Test
+    public void lazyModuleAfterFailedLookup() throws Exception {
+        moduleManager.loadModule(modules.module("host", "name=Host\nmain=host.Main\nversion=1.0\n",
+                "package host; public class Main extends com.minecraft.moonlake.module.java.JavaModule { }"));
+        ClassLoader hostLoader = moduleManager.getModule("Host").getClass().getClassLoader();
+        try {
+            Class.forName("lazy.Api", false, hostLoader);
+            fail("延迟加载的模块还没有注册, 不应该找到类.");
+        } catch (ClassNotFoundException e) {
+            // 查找失败会被缓存
+        }
+        Module lazy = moduleManager.loadModule(modules.module("lazy", "name=Lazy\nmain=lazy.Main\nversion=1.0\nlazy=true\n",
+                "package lazy; public class Main extends com.minecraft.moonlake.module.java.JavaModule { }",
+                "package lazy; public class Api { }"));
+        assertNotNull(lazy);
+        assertFalse(lazy.getClass().getName().equals("lazy.Main")); // 还没有实际加载
+        Class<?> api = Class.forName("lazy.Api", false, hostLoader);
+        Module activated = moduleManager.getModule("Lazy");
+        assertSame(activated.getClass().getClassLoader(), api.getClassLoader());
+        assertTrue(activated.getClass().getName().equals("lazy.Main"));
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package com.minecraft.moonlake.module.test;
+
+import com.minecraft.moonlake.module.Module;
+import com.minecraft.moonlake.module.java.JavaModuleManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class ModuleClassIndexTest {
+
+    private TestModules modules;
+    private JavaModuleManager moduleManager;
+
+    @Before
+    public void init() throws Exception {
+        modules = new TestModules();
+        moduleManager = new JavaModuleManager();
+    }
+
+    @After
+    public void close() throws Exception {
+        moduleManager.close();
+        modules.close();
+    }
+
+    @Test
+    public void lookupGoesToOwner() throws Exception {
+        Module other = load("other", "Other");
+        Module provider = load("provider", "Provider", "package provider; public class Api { }");
+        Module consumer = load("consumer", "Consumer");
+        Class<?> api = Class.forName("provider.Api", false, consumer.getClass().getClassLoader());
+        assertSame(provider.getClass().getClassLoader(), api.getClassLoader());
+        assertEquals(1, moduleManager.getMetrics().getCrossModuleLookups("Provider"));
+        assertEquals(0, moduleManager.getMetrics().getCrossModuleLookups("Other"));
+        assertEquals(1, moduleManager.getMetrics().getClassesLoaded("Other")); // 只有主类, 没有被尝试定义其他类
+        assertSame(api, Class.forName("provider.Api", false, other.getClass().getClassLoader()));
+    }
+
+    @Test
+    public void ownerHandoffOnUnload() throws Exception {
+        Module first = load("first", "First", "package shared; public class Api { }");
+        Module second = load("second", "Second", "package shared; public class Api { }");
+        ClassLoader consumerLoader = load("consumer", "Consumer").getClass().getClassLoader();
+        assertSame(first.getClass().getClassLoader(), Class.forName("shared.Api", false, consumerLoader).getClassLoader());
+        moduleManager.unloadModule(first);
+        consumerLoader = load("later", "Later").getClass().getClassLoader(); // 虚拟机为已经查找过的类加载器记录了结果
+        assertSame(second.getClass().getClassLoader(), Class.forName("shared.Api", false, consumerLoader).getClassLoader());
+    }
+
+    private Module load(String packageName, String name, String... sources) throws Exception {
+        String[] allSources = new String[sources.length + 1];
+        allSources[0] = "package " + packageName + "; public class Main extends com.minecraft.moonlake.module.java.JavaModule { }";
+        System.arraycopy(sources, 0, allSources, 1, sources.length);
+        return moduleManager.loadModule(modules.module(packageName, "name=" + name + "\nmain=" + packageName + ".Main\nversion=1.0\n", allSources));
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package com.minecraft.moonlake.module.test;
+
+import com.minecraft.moonlake.module.Module;
+import com.minecraft.moonlake.module.ModuleDescription;
+import com.minecraft.moonlake.module.ModuleDescriptionValidator;
+import com.minecraft.moonlake.module.ModuleLifecycleListener;
+import com.minecraft.moonlake.module.ModuleLoader;
+import com.minecraft.moonlake.module.ModuleLoaderFactory;
+import com.minecraft.moonlake.module.ModuleManager;
+import com.minecraft.moonlake.module.SimpleModuleManager;
+import com.minecraft.moonlake.module.exception.InvalidModuleDescriptionException;
+import com.minecraft.moonlake.module.exception.InvalidModuleException;
+import com.minecraft.moonlake.module.java.JavaModuleLoaderFactory;
+import com.minecraft.moonlake.module.metrics.ModuleMetricsRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class ModuleDependencyCheckTest {
+
+    private TestModules modules;
+    private CountingLoader loader;
+    private SimpleModuleManager moduleManager;
+
+    @Before
+    public void init() throws Exception {
+        modules = new TestModules();
+        loader = new CountingLoader(new JavaModuleLoaderFactory().getLoader());
+        moduleManager = new SimpleModuleManager(new ModuleLoaderFactory() {
+            @Override
+            public ModuleLoader getLoader() {
+                return loader;
+            }
+
+            @Override
+            public ModuleLoader validate(File moduleFile) {
+                return moduleFile.getName().endsWith(".jar") ? loader : null;
+            }
+        });
+    }
+
+    @After
+    public void close() throws Exception {
+        moduleManager.close();
+        modules.close();
+    }
+
+    @Test
+    public void loadReadsDescriptionOnce() throws Exception {
+        moduleManager.loadModule(module("base", "Base", ""));
+        Module dependent = moduleManager.loadModule(module("dependent", "Dependent", "depend=Base\n"));
+        assertNotNull(dependent);
+        moduleManager.reloadModule(dependent);
+        assertEquals(0, loader.descriptions.get()); // 依赖检查使用加载时读取的描述
+    }
+
+    @Test
+    public void missingDependency() throws Exception {
+        try {
+            moduleManager.loadModule(module("dependent", "Dependent", "depend=Base\n"));
+            fail("缺少依赖的模块不应该被加载.");
+        } catch (InvalidModuleException e) {
+            // 缺少依赖模块 'Base'
+        }
+        assertNull(moduleManager.getModule("Dependent"));
+        assertEquals(0, moduleManager.getModuleSize());
+    }
+
+    private File module(String packageName, String name, String properties) throws Exception {
+        return modules.module(packageName, "name=" + name + "\nmain=" + packageName + ".Main\nversion=1.0\n" + properties,
+                "package " + packageName + "; public class Main extends com.minecraft.moonlake.module.java.JavaModule { }");
+    }
+
+    /** 统计单独读取模块描述的次数, 其他调用直接交给模块加载器 */
+    private static final class CountingLoader implements ModuleLoader {
+
+        private final ModuleLoader loader;
+        private final AtomicInteger descriptions = new AtomicInteger();
+
+        CountingLoader(ModuleLoader loader) {
+            this.loader = loader;
+        }
+
+        @Override
+        public Module loadModule(File moduleFile) throws InvalidModuleException {
+            return loader.loadModule(moduleFile);
+        }
+
+        @Override
+        public Module loadModule(File moduleFile, ModuleDescriptionValidator validator) throws InvalidModuleException, InvalidModuleDescriptionException {
+            return loader.loadModule(moduleFile, validator);
+        }
+
+        @Override
+        public ModuleDescription getDescription(File moduleFile) throws InvalidModuleDescriptionException {
+            descriptions.incrementAndGet();
+            return loader.getDescription(moduleFile);
+        }
+
+        @Override
+        public void enableModule(Module module) {
+            loader.enableModule(module);
+        }
+
+        @Override
+        public void disableModule(Module module) {
+            loader.disableModule(module);
+        }
+
+        @Override
+        public void unloadModule(Module module) {
+            loader.unloadModule(module);
+        }
+
+        @Override
+        public ModuleMetricsRegistry getMetrics() {
+            return loader.getMetrics();
+        }
+
+        @Override
+        public ModuleManager getManager() {
+            return loader.getManager();
+        }
+
+        @Override
+        public void addLifecycleListener(ModuleLifecycleListener listener) {
+            loader.addLifecycleListener(listener);
+        }
+
+        @Override
+        public void removeLifecycleListener(ModuleLifecycleListener listener) {
+            loader.removeLifecycleListener(listener);
+        }
+    }
+}
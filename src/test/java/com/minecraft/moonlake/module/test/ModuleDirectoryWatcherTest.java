@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package com.minecraft.moonlake.module.test;
+
+import com.minecraft.moonlake.module.Module;
+import com.minecraft.moonlake.module.ModuleDirectoryWatcher;
+import com.minecraft.moonlake.module.ModuleLifecycleListener;
+import com.minecraft.moonlake.module.java.JavaModuleManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ModuleDirectoryWatcherTest {
+
+    private static final long DEBOUNCE = 200L;
+
+    private TestModules modules;
+    private JavaModuleManager moduleManager;
+    private File watchDir;
+    private ModuleDirectoryWatcher watcher;
+
+    @Before
+    public void init() throws Exception {
+        modules = new TestModules();
+        moduleManager = new JavaModuleManager();
+        watchDir = new File(modules.getModuleDir().getParentFile(), "watched");
+        assertTrue(watchDir.mkdir());
+        watcher = moduleManager.watchModules(watchDir, DEBOUNCE);
+    }
+
+    @After
+    public void close() throws Exception {
+        watcher.close();
+        moduleManager.close();
+        modules.close();
+    }
+
+    @Test(timeout = 20000)
+    public void createModifyDelete() throws Exception {
+        File target = new File(watchDir, "watched.jar");
+        copy(module("watched-1", "1.0"), target);
+        waitFor(() -> moduleManager.isEnable("Watched"));
+        copy(module("watched-2", "2.0"), target);
+        waitFor(() -> isVersion("2.0") && moduleManager.isEnable("Watched"));
+        assertEquals(1, moduleManager.getModuleSize());
+        assertTrue(target.delete());
+        waitFor(() -> moduleManager.getModule("Watched") == null);
+        assertEquals(0, moduleManager.getModuleSize());
+    }
+
+    @Test(timeout = 20000)
+    public void burstCollapsesIntoOneReload() throws Exception {
+        File target = new File(watchDir, "watched.jar");
+        copy(module("watched-1", "1.0"), target);
+        waitFor(() -> moduleManager.isEnable("Watched"));
+        AtomicInteger enabled = new AtomicInteger();
+        moduleManager.getLoader().addLifecycleListener(new ModuleLifecycleListener() {
+            @Override
+            public void onModuleEnabled(Module module) {
+                enabled.incrementAndGet();
+            }
+        });
+        File version2 = module("watched-2", "2.0");
+        for(int i = 0; i < 5; i++) { // 连续写入间隔小于静默期
+            copy(version2, target);
+            Thread.sleep(DEBOUNCE / 5);
+        }
+        waitFor(() -> isVersion("2.0") && moduleManager.isEnable("Watched"));
+        Thread.sleep(DEBOUNCE * 5);
+        assertEquals(1, enabled.get());
+    }
+
+    private File module(String jarName, String version) throws Exception {
+        return modules.module(jarName, "name=Watched\nmain=watched.Main\nversion=" + version + "\n",
+                "package watched; public class Main extends com.minecraft.moonlake.module.java.JavaModule { }");
+    }
+
+    private boolean isVersion(String version) {
+        Module module = moduleManager.getModule("Watched");
+        return module != null && version.equals(module.getDescription().getVersion());
+    }
+
+    private static void copy(File source, File target) throws Exception {
+        Files.copy(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        while(!condition.getAsBoolean())
+            Thread.sleep(20L);
+    }
+}
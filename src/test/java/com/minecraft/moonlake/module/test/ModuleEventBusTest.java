@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package com.minecraft.moonlake.module.test;
+
+import com.minecraft.moonlake.module.Module;
+import com.minecraft.moonlake.module.event.Cancellable;
+import com.minecraft.moonlake.module.event.ModuleEvent;
+import com.minecraft.moonlake.module.event.ModuleEventBus;
+import com.minecraft.moonlake.module.event.ModuleEventHandler;
+import com.minecraft.moonlake.module.event.ModuleEventListener;
+import com.minecraft.moonlake.module.event.ModuleEventPriority;
+import com.minecraft.moonlake.module.java.JavaModuleManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ModuleEventBusTest {
+
+    private TestModules modules;
+    private JavaModuleManager moduleManager;
+    private ModuleEventBus eventBus;
+    private Module module;
+
+    @Before
+    public void init() throws Exception {
+        modules = new TestModules();
+        moduleManager = new JavaModuleManager();
+        eventBus = moduleManager.getEventBus();
+        module = moduleManager.loadModule(modules.module("owner", "name=Owner\nmain=owner.Main\nversion=1.0\n",
+                "package owner; public class Main extends com.minecraft.moonlake.module.java.JavaModule { }"));
+        moduleManager.enableModule(module);
+    }
+
+    @After
+    public void close() throws Exception {
+        moduleManager.close();
+        modules.close();
+    }
+
+    @Test
+    public void priorityOrder() {
+        List<String> calls = new ArrayList<>();
+        eventBus.register(module, TestEvent.class, ModuleEventPriority.HIGH, false, event -> calls.add("high"));
+        eventBus.register(module, TestEvent.class, ModuleEventPriority.MONITOR, false, event -> calls.add("monitor"));
+        eventBus.register(module, new OrderListener(calls));
+        eventBus.register(module, TestEvent.class, ModuleEventPriority.NORMAL, false, event -> calls.add("normal-2"));
+        eventBus.register(module, ModuleEvent.class, ModuleEventPriority.LOW, false, event -> calls.add("low")); // 父类型的处理器
+        eventBus.post(new TestEvent());
+        // 相同优先级按注册顺序调用
+        assertEquals(Arrays.asList("lowest", "low", "normal-1", "normal-2", "high", "monitor"), calls);
+    }
+
+    @Test
+    public void cancellation() {
+        List<String> calls = new ArrayList<>();
+        eventBus.register(module, TestEvent.class, ModuleEventPriority.LOW, false, event -> event.setCancelled(true));
+        eventBus.register(module, TestEvent.class, ModuleEventPriority.NORMAL, true, event -> calls.add("ignored"));
+        eventBus.register(module, TestEvent.class, ModuleEventPriority.HIGH, false, event -> {
+            calls.add("high");
+            event.setCancelled(false);
+        });
+        eventBus.register(module, TestEvent.class, ModuleEventPriority.MONITOR, true, event -> calls.add("monitor"));
+        TestEvent event = eventBus.post(new TestEvent());
+        assertFalse(event.isCancelled());
+        assertEquals(Arrays.asList("high", "monitor"), calls); // 取消被撤销后的处理器仍然会被调用
+    }
+
+    @Test
+    public void exceptionDoesNotStopOtherHandlers() {
+        List<String> calls = new ArrayList<>();
+        eventBus.register(module, TestEvent.class, ModuleEventPriority.LOW, false, event -> {
+            throw new IllegalStateException("测试异常");
+        });
+        eventBus.register(module, TestEvent.class, ModuleEventPriority.NORMAL, false, event -> calls.add("normal"));
+        eventBus.post(new TestEvent());
+        assertEquals(Arrays.asList("normal"), calls);
+    }
+
+    @Test
+    public void unregisterOnDisable() {
+        List<String> calls = new ArrayList<>();
+        eventBus.register(module, new OrderListener(calls));
+        Object handle = eventBus.register(module, TestEvent.class, ModuleEventPriority.NORMAL, false, event -> calls.add("consumer"));
+        assertTrue(eventBus.hasHandlers(TestEvent.class)); // 建立缓存, 关闭后需要重新建立
+        eventBus.unregister(handle);
+        eventBus.post(new TestEvent());
+        assertEquals(Arrays.asList("lowest", "normal-1"), calls);
+        moduleManager.disableModule(module);
+        calls.clear();
+        eventBus.post(new TestEvent());
+        assertEquals(0, calls.size());
+        assertFalse(eventBus.hasHandlers(TestEvent.class));
+    }
+
+    @Test
+    public void moduleEventTypesDroppedOnDisable() throws Exception {
+        Module emitter = moduleManager.loadModule(modules.module("emitter", "name=Emitter\nmain=emitter.Main\nversion=1.0\n",
+                "package emitter; public class Main extends com.minecraft.moonlake.module.java.JavaModule { }",
+                "package emitter; public class EmitterEvent extends com.minecraft.moonlake.module.event.ModuleEvent { }"));
+        moduleManager.enableModule(emitter);
+        ClassLoader classLoader = emitter.getClass().getClassLoader();
+        Class<?> eventType = Class.forName("emitter.EmitterEvent", true, classLoader);
+        eventBus.post((ModuleEvent) eventType.newInstance()); // 没有处理器的事件类型
+        eventBus.post(new TestEvent());
+        assertTrue(getBaked().containsKey(eventType));
+        moduleManager.disableModule(emitter);
+        for(Class<?> type : getBaked().keySet())
+            assertFalse(type.getName(), type.getClassLoader() == classLoader);
+        assertTrue(getBaked().containsKey(TestEvent.class)); // 其他事件类型的缓存保留
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<Class<?>, ?> getBaked() throws Exception {
+        Field field = ModuleEventBus.class.getDeclaredField("baked");
+        field.setAccessible(true);
+        return (Map<Class<?>, ?>) field.get(eventBus);
+    }
+
+    public static class TestEvent extends ModuleEvent implements Cancellable {
+
+        private boolean cancelled;
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public void setCancelled(boolean cancelled) {
+            this.cancelled = cancelled;
+        }
+    }
+
+    public static class OrderListener implements ModuleEventListener {
+
+        private final List<String> calls;
+
+        private OrderListener(List<String> calls) {
+            this.calls = calls;
+        }
+
+        @ModuleEventHandler(priority = ModuleEventPriority.LOWEST)
+        public void onLowest(TestEvent event) {
+            calls.add("lowest");
+        }
+
+        @ModuleEventHandler
+        public void onNormal(TestEvent event) {
+            calls.add("normal-1");
+        }
+    }
+}
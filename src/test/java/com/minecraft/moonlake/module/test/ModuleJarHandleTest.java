@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package com.minecraft.moonlake.module.test;
+
+import com.minecraft.moonlake.module.Module;
+import com.minecraft.moonlake.module.java.JavaModuleLoader;
+import com.minecraft.moonlake.module.java.JavaModuleManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.jar.JarFile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ModuleJarHandleTest {
+
+    private static final Path FD_DIR = Paths.get("/proc/self/fd");
+
+    private TestModules modules;
+    private JavaModuleManager moduleManager;
+
+    @Before
+    public void init() throws Exception {
+        modules = new TestModules();
+        moduleManager = new JavaModuleManager();
+        ((JavaModuleLoader) moduleManager.getLoader()).setMappedJar(false);
+    }
+
+    @After
+    public void close() throws Exception {
+        moduleManager.close();
+        modules.close();
+    }
+
+    @Test
+    public void sharedJarHandle() throws Exception {
+        if(!Files.isDirectory(FD_DIR))
+            return; // 只能在 Linux 上统计文件句柄
+        File moduleFile = module();
+        Module module = moduleManager.loadModule(moduleFile);
+        moduleManager.enableModule(module);
+        assertEquals(1, countHandles(moduleFile));
+        Class.forName("handle.Extra", false, module.getClass().getClassLoader());
+        assertEquals(1, countHandles(moduleFile)); // 类加载使用描述读取时打开的同一个句柄
+        moduleManager.disableModule(module);
+        assertEquals(0, countHandles(moduleFile));
+    }
+
+    @Test
+    public void closedJarHandle() throws Exception {
+        Module module = moduleManager.loadModule(module());
+        ClassLoader classLoader = module.getClass().getClassLoader();
+        Field field = classLoader.getClass().getDeclaredField("jarFile");
+        field.setAccessible(true);
+        ((JarFile) field.get(classLoader)).close(); // 模拟卸载时在读取之前并发关闭句柄
+        try {
+            Class.forName("handle.Extra", false, classLoader);
+            fail("句柄已经关闭, 不应该找到类.");
+        } catch (ClassNotFoundException e) {
+            // 不能以 IllegalStateException 抛给调用方
+        }
+    }
+
+    @Test
+    public void resourceUrlAfterUnload() throws Exception {
+        File moduleFile = module();
+        Module module = moduleManager.loadModule(moduleFile);
+        moduleManager.enableModule(module);
+        URL resource = module.getClass().getClassLoader().getResource("module.properties");
+        assertNotNull(resource);
+        assertTrue(resource.toString().startsWith("jar:file:"));
+        try (InputStream inputStream = resource.openStream()) {
+            assertTrue(new String(readFully(inputStream), StandardCharsets.UTF_8).contains("name=Handle"));
+        }
+        moduleManager.unloadModule(module);
+        if(Files.isDirectory(FD_DIR))
+            assertEquals(0, countHandles(moduleFile)); // 没有被 JarURLConnection 缓存的句柄
+        try (InputStream inputStream = resource.openStream()) {
+            fail("模块已经卸载, 不应该读取到资源.");
+        } catch (IOException e) {
+            // 已经被卸载
+        }
+        File renamed = new File(moduleFile.getParentFile(), "renamed.jar");
+        assertTrue(moduleFile.renameTo(renamed));
+        assertTrue(renamed.delete());
+    }
+
+    private static byte[] readFully(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int read;
+        while((read = inputStream.read(buffer)) != -1)
+            outputStream.write(buffer, 0, read);
+        return outputStream.toByteArray();
+    }
+
+    private File module() throws IOException {
+        return modules.module("handle", "name=Handle\nmain=handle.Main\nversion=1.0\n",
+                "package handle; public class Main extends com.minecraft.moonlake.module.java.JavaModule { }",
+                "package handle; public class Extra { }");
+    }
+
+    private static int countHandles(File file) throws IOException {
+        Path target = file.toPath().toRealPath();
+        int count = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(FD_DIR)) {
+            for(Path fd : stream) try {
+                if(target.equals(Files.readSymbolicLink(fd)))
+                    count++;
+            } catch (IOException e) {
+                // 遍历时关闭的句柄
+            }
+        }
+        return count;
+    }
+}
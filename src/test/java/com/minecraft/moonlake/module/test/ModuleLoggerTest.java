@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package com.minecraft.moonlake.module.test;
+
+import com.minecraft.moonlake.module.Module;
+import com.minecraft.moonlake.module.ModuleLogger;
+import com.minecraft.moonlake.module.java.JavaModuleManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ModuleLoggerTest {
+
+    private TestModules modules;
+    private JavaModuleManager moduleManager;
+    private Logger logger;
+
+    @Before
+    public void init() throws Exception {
+        modules = new TestModules();
+        moduleManager = new JavaModuleManager();
+        Module module = moduleManager.loadModule(modules.module("logged", "name=Logged\nmain=logged.Main\nversion=1.0\n",
+                "package logged; public class Main extends com.minecraft.moonlake.module.java.JavaModule { }"));
+        logger = module.getLogger();
+    }
+
+    @After
+    public void close() throws Exception {
+        ModuleLogger.setSharedHandler(null);
+        moduleManager.close();
+        modules.close();
+    }
+
+    @Test
+    public void noFormattingBelowLevel() {
+        CapturingHandler handler = new CapturingHandler();
+        logger.addHandler(handler);
+        logger.setLevel(Level.WARNING);
+        AtomicInteger formatted = new AtomicInteger();
+        Object parameter = new Object() {
+            @Override
+            public String toString() {
+                formatted.incrementAndGet();
+                return "parameter";
+            }
+        };
+        logger.info(() -> "supplied " + formatted.incrementAndGet());
+        logger.log(Level.FINE, "message {0}", parameter);
+        assertEquals(0, formatted.get());
+        assertEquals(0, handler.records.size());
+        logger.warning("warning");
+        assertEquals(1, handler.records.size());
+        assertEquals("[Logged] warning", handler.records.get(0).getMessage());
+    }
+
+    @Test
+    public void sharedHandlerKeepsLoggerHandlers() {
+        CapturingHandler own = new CapturingHandler();
+        CapturingHandler shared = new CapturingHandler();
+        CapturingHandler parent = new CapturingHandler();
+        logger.addHandler(own);
+        Logger.getLogger("").addHandler(parent);
+        try {
+            ModuleLogger.setSharedHandler(shared); // 记录器在设置之前已经创建
+            logger.setFilter(record -> !record.getMessage().contains("filtered"));
+            logger.warning("shared");
+            logger.warning("filtered");
+            assertEquals(1, own.records.size());
+            assertEquals(1, shared.records.size());
+            assertEquals(0, parent.records.size()); // 不再传递给父记录器
+            ModuleLogger.setSharedHandler(null);
+            logger.warning("restored");
+            assertEquals(1, shared.records.size());
+            assertEquals(1, parent.records.size());
+            assertTrue(logger.getUseParentHandlers());
+        } finally {
+            Logger.getLogger("").removeHandler(parent);
+        }
+    }
+
+    private static final class CapturingHandler extends Handler {
+
+        private final List<LogRecord> records = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void publish(LogRecord record) {
+            if(isLoggable(record))
+                records.add(record);
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package com.minecraft.moonlake.module.test;
+
+import com.minecraft.moonlake.module.Module;
+import com.minecraft.moonlake.module.java.JavaModuleManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ModuleManagerAsyncTest {
+
+    private TestModules modules;
+    private JavaModuleManager moduleManager;
+
+    private ExecutorService executor;
+
+    @Before
+    public void init() throws Exception {
+        modules = new TestModules();
+        moduleManager = new JavaModuleManager();
+    }
+
+    @After
+    public void close() throws Exception {
+        moduleManager.close();
+        if(executor != null)
+            executor.shutdownNow();
+        modules.close();
+    }
+
+    @Test(timeout = 20000)
+    public void asyncOperationsComplete() throws Exception {
+        File moduleFile = modules.module("plain", "name=Plain\nmain=plain.Main\nversion=1.0\n",
+                "package plain; public class Main extends com.minecraft.moonlake.module.java.JavaModule { }");
+        Module module = moduleManager.loadModuleAsync(moduleFile).get(5L, TimeUnit.SECONDS);
+        assertSame(module, moduleManager.getModule("Plain"));
+        assertSame(module, moduleManager.enableModuleAsync(module).get(5L, TimeUnit.SECONDS));
+        assertTrue(module.isEnable());
+        assertSame(module, moduleManager.disableModuleAsync(module).get(5L, TimeUnit.SECONDS));
+        assertFalse(module.isEnable());
+        moduleManager.enableModulesAsync().get(5L, TimeUnit.SECONDS);
+        assertTrue(module.isEnable());
+        moduleManager.disableModulesAsync().get(5L, TimeUnit.SECONDS);
+        assertFalse(module.isEnable());
+        Module reloaded = moduleManager.reloadModuleAsync(module).get(5L, TimeUnit.SECONDS);
+        assertNotSame(module, reloaded);
+        assertSame(reloaded, moduleManager.getModule("Plain"));
+        assertSame(reloaded, moduleManager.unloadModuleAsync(reloaded).get(5L, TimeUnit.SECONDS));
+        assertNull(moduleManager.getModule("Plain"));
+        Module[] loaded = moduleManager.loadModulesAsync(modules.getModuleDir()).get(5L, TimeUnit.SECONDS);
+        assertEquals(1, loaded.length);
+        assertSame(loaded[0], moduleManager.getModule("Plain"));
+    }
+
+    @Test(timeout = 20000)
+    public void sameModuleOperationsRunInOrder() throws Exception {
+        Module module = moduleManager.loadModule(modules.module("slow", "name=Slow\nmain=slow.Main\nversion=1.0\n",
+                "package slow; public class Main extends com.minecraft.moonlake.module.java.JavaModule {\n" +
+                "    @Override public void onEnable() { try { Thread.sleep(300L); } catch (InterruptedException e) { } }\n" +
+                "}"));
+        executor = Executors.newFixedThreadPool(2);
+        moduleManager.setAsyncExecutor(executor);
+        CompletableFuture<Module> enable = moduleManager.enableModuleAsync(module);
+        CompletableFuture<Module> disable = moduleManager.disableModuleAsync(module);
+        disable.get(5L, TimeUnit.SECONDS);
+        assertTrue(enable.isDone()); // 关闭排在启用完成之后执行
+        assertFalse(module.isEnable());
+        assertSame(module, enable.get());
+    }
+
+    @Test(timeout = 20000)
+    public void callbacksRunOnCallbackExecutor() throws Exception {
+        Module module = moduleManager.loadModule(modules.module("plain", "name=Plain\nmain=plain.Main\nversion=1.0\n",
+                "package plain; public class Main extends com.minecraft.moonlake.module.java.JavaModule { }"));
+        executor = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "callback-thread"));
+        moduleManager.setCallbackExecutor(executor);
+        CountDownLatch attached = new CountDownLatch(1);
+        moduleManager.setAsyncExecutor(runnable -> ForkJoinPool.commonPool().execute(() -> {
+            try {
+                attached.await(); // 在结果完成之前添加回调
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            runnable.run();
+        }));
+        CompletableFuture<String> callback = moduleManager.enableModuleAsync(module).thenApply(enabled -> Thread.currentThread().getName());
+        attached.countDown();
+        assertEquals("callback-thread", callback.get(5L, TimeUnit.SECONDS));
+    }
+
+    @Test(timeout = 10000)
+    public void rejectedExecutorCompletesExceptionally() throws Exception {
+        Module module = moduleManager.loadModule(modules.module("plain", "name=Plain\nmain=plain.Main\nversion=1.0\n",
+                "package plain; public class Main extends com.minecraft.moonlake.module.java.JavaModule { }"));
+        moduleManager.setAsyncExecutor(runnable -> {
+            throw new RejectedExecutionException();
+        });
+        try {
+            moduleManager.enableModuleAsync(module).get(5L, TimeUnit.SECONDS);
+            fail("执行器拒绝任务时应该以异常完成.");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void enableCallingSynchronizedModuleMethod() throws Exception {
+        Module module = moduleManager.loadModule(modules.module("locked", "name=Locked\nmain=locked.Main\nversion=1.0\nenable-timeout=2000\n",
+                "package locked; public class Main extends com.minecraft.moonlake.module.java.JavaModule {\n" +
+                "    public synchronized void touch() { }\n" +
+                "    @Override public void onEnable() { touch(); }\n" +
+                "}"));
+        long start = System.nanoTime();
+        moduleManager.enableModule(module);
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("启用等待了 " + millis + " 毫秒.", millis < 1000L);
+        assertTrue(module.isEnable());
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package com.minecraft.moonlake.module.test;
+
+import com.minecraft.moonlake.module.Module;
+import com.minecraft.moonlake.module.exception.InvalidModuleException;
+import com.minecraft.moonlake.module.java.JavaModuleManager;
+import com.minecraft.moonlake.module.metrics.ModuleMetrics;
+import com.minecraft.moonlake.module.metrics.ModuleMetricsListener;
+import com.minecraft.moonlake.module.metrics.ModulePhase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ModuleMetricsTest {
+
+    private TestModules modules;
+    private JavaModuleManager moduleManager;
+
+    @Before
+    public void init() throws Exception {
+        modules = new TestModules();
+        moduleManager = new JavaModuleManager();
+    }
+
+    @After
+    public void close() throws Exception {
+        moduleManager.close();
+        modules.close();
+    }
+
+    @Test
+    public void phaseTimesRecorded() throws Exception {
+        Set<ModulePhase> phases = EnumSet.noneOf(ModulePhase.class);
+        moduleManager.getMetrics().addListener(new ModuleMetricsListener() {
+            @Override
+            public void onPhase(String module, ModulePhase phase, long nanos) {
+                if(module.equals("Metered"))
+                    phases.add(phase);
+            }
+        });
+        Module module = moduleManager.loadModule(modules.module("metered", "name=Metered\nmain=metered.Main\nversion=1.0\n",
+                "package metered; public class Main extends com.minecraft.moonlake.module.java.JavaModule {\n" +
+                "    @Override public void onEnable() { new Helper(); }\n" +
+                "}",
+                "package metered; class Helper { }"));
+        moduleManager.enableModule(module);
+        moduleManager.disableModule(module);
+        assertEquals(EnumSet.of(ModulePhase.DESCRIPTION, ModulePhase.CLASS_LOADER, ModulePhase.MAIN_CLASS, ModulePhase.ENABLE, ModulePhase.DISABLE), phases);
+        ModuleMetrics metrics = moduleManager.getMetrics().getMetrics("Metered");
+        assertNotNull(metrics);
+        for(ModulePhase phase : phases)
+            assertTrue(phase.name(), metrics.getPhaseTime(phase, TimeUnit.NANOSECONDS) > 0L);
+        assertEquals(2, metrics.getClassesLoaded());
+        assertEquals(0, metrics.getFailures());
+    }
+
+    @Test
+    public void failureRecorded() throws Exception {
+        List<ModulePhase> failures = new CopyOnWriteArrayList<>();
+        moduleManager.getMetrics().addListener(new ModuleMetricsListener() {
+            @Override
+            public void onFailure(String module, ModulePhase phase, Throwable cause) {
+                failures.add(phase);
+            }
+        });
+        try {
+            moduleManager.loadModule(modules.module("broken", "name=Broken\nmain=broken.Missing\nversion=1.0\n",
+                    "package broken; public class Main extends com.minecraft.moonlake.module.java.JavaModule { }"));
+            fail("模块主类不存在, 不应该加载.");
+        } catch (InvalidModuleException e) {
+            // 无法查找到模块主类
+        }
+        assertEquals(Arrays.asList(ModulePhase.CLASS_LOADER), failures);
+        assertEquals(1, moduleManager.getMetrics().getFailures("Broken"));
+    }
+
+    @Test
+    public void mxBeanAttributes() throws Exception {
+        moduleManager.loadModule(modules.module("metered", "name=Metered\nmain=metered.Main\nversion=1.0\n",
+                "package metered; public class Main extends com.minecraft.moonlake.module.java.JavaModule { }"));
+        ObjectName objectName = moduleManager.getMetrics().registerMBean("ModuleMetricsTest");
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            assertTrue(Arrays.asList((String[]) server.getAttribute(objectName, "ModuleNames")).contains("Metered"));
+            assertEquals(1L, server.invoke(objectName, "getClassesLoaded", new Object[] { "Metered" }, new String[] { String.class.getName() }));
+            Map<?, ?> phaseTimes = (Map<?, ?>) server.invoke(objectName, "getPhaseTimes", new Object[] { "Metered" }, new String[] { String.class.getName() });
+            assertEquals(ModulePhase.values().length, phaseTimes.size());
+        } finally {
+            server.unregisterMBean(objectName);
+        }
+    }
+}
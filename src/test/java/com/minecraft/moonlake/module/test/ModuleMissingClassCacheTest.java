@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package com.minecraft.moonlake.module.test;
+
+import com.minecraft.moonlake.module.Module;
+import com.minecraft.moonlake.module.java.JavaModuleLoader;
+import com.minecraft.moonlake.module.java.JavaModuleManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class ModuleMissingClassCacheTest {
+
+    private TestModules modules;
+    private JavaModuleManager moduleManager;
+    private JavaModuleLoader loader;
+
+    @Before
+    public void init() throws Exception {
+        modules = new TestModules();
+        moduleManager = new JavaModuleManager();
+        loader = (JavaModuleLoader) moduleManager.getLoader();
+    }
+
+    @After
+    public void close() throws Exception {
+        moduleManager.close();
+        modules.close();
+    }
+
+    @Test
+    public void repeatedMissHitsCache() throws Exception {
+        ClassLoader hostLoader = host().getClass().getClassLoader();
+        assertMissing("absent.Type", hostLoader);
+        long hits = loader.getMissingCacheHits();
+        assertEquals(1, loader.getMissingCacheSize());
+        assertMissing("absent.Type", hostLoader);
+        assertEquals(hits + 1, loader.getMissingCacheHits());
+    }
+
+    @Test
+    public void invalidatedWhenProviderLoads() throws Exception {
+        ClassLoader hostLoader = host().getClass().getClassLoader();
+        assertMissing("absent.Type", hostLoader);
+        Module provider = moduleManager.loadModule(modules.module("absent", "name=Absent\nmain=absent.Main\nversion=1.0\n",
+                "package absent; public class Main extends com.minecraft.moonlake.module.java.JavaModule { }",
+                "package absent; public class Type { }"));
+        assertEquals(0, loader.getMissingCacheSize());
+        assertSame(provider.getClass().getClassLoader(), Class.forName("absent.Type", false, hostLoader).getClassLoader());
+    }
+
+    private Module host() throws Exception {
+        return moduleManager.loadModule(modules.module("host", "name=Host\nmain=host.Main\nversion=1.0\n",
+                "package host; public class Main extends com.minecraft.moonlake.module.java.JavaModule { }"));
+    }
+
+    private static void assertMissing(String name, ClassLoader classLoader) {
+        try {
+            Class.forName(name, false, classLoader);
+            fail("没有模块提供类 '" + name + "'.");
+        } catch (ClassNotFoundException e) {
+            // 查找失败会被缓存
+        }
+    }
+}
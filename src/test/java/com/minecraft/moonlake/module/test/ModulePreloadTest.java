@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package com.minecraft.moonlake.module.test;
+
+import com.minecraft.moonlake.module.Module;
+import com.minecraft.moonlake.module.java.JavaModuleLoader;
+import com.minecraft.moonlake.module.java.JavaModuleManager;
+import com.minecraft.moonlake.module.metrics.ModuleMetrics;
+import com.minecraft.moonlake.module.metrics.ModulePhase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ModulePreloadTest {
+
+    private static final int CLASSES = 64;
+
+    private TestModules modules;
+    private ThreadPoolExecutor executor;
+
+    @Before
+    public void init() throws Exception {
+        modules = new TestModules();
+        executor = new ThreadPoolExecutor(4, 4, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>());
+    }
+
+    @After
+    public void close() throws Exception {
+        executor.shutdownNow();
+        modules.close();
+    }
+
+    @Test
+    public void trainedClassesPreloadedOnExecutor() throws Exception {
+        String[] sources = new String[CLASSES + 1];
+        sources[0] = "package preloaded; public class Main extends com.minecraft.moonlake.module.java.JavaModule {\n" +
+                "    @Override public void onEnable() {\n" +
+                "        try {\n" +
+                "            for(int i = 0; i < " + CLASSES + "; i++) Class.forName(\"preloaded.Loaded\" + i, false, getClass().getClassLoader());\n" +
+                "        } catch (ClassNotFoundException e) { throw new IllegalStateException(e); }\n" +
+                "    }\n" +
+                "}";
+        for(int i = 0; i < CLASSES; i++)
+            sources[i + 1] = "package preloaded; class Loaded" + i + " { }";
+        File moduleFile = modules.module("preloaded", "name=Preloaded\nmain=preloaded.Main\nversion=1.0\n", sources);
+
+        try(JavaModuleManager training = new JavaModuleManager()) {
+            ((JavaModuleLoader) training.getLoader()).setTraining(true);
+            training.loadModules(modules.getModuleDir());
+            training.enableModules();
+            training.disableModules(); // 写入训练运行记录的类
+        }
+
+        try(JavaModuleManager moduleManager = new JavaModuleManager(executor)) {
+            Module module = moduleManager.loadModule(moduleFile);
+            ModuleMetrics metrics = moduleManager.getMetrics().getMetrics("Preloaded");
+            assertEquals(CLASSES + 1, metrics.getClassesLoaded()); // 启用之前已经定义
+            assertTrue(metrics.getPhaseTime(ModulePhase.PRELOAD, TimeUnit.NANOSECONDS) > 0L);
+            assertTrue(executor.getTaskCount() > 0L);
+            moduleManager.enableModule(module);
+            assertEquals(CLASSES + 1, metrics.getClassesLoaded());
+        }
+    }
+}
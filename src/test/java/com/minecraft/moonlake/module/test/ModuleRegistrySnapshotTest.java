@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package com.minecraft.moonlake.module.test;
+
+import com.minecraft.moonlake.module.Module;
+import com.minecraft.moonlake.module.java.JavaModuleManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class ModuleRegistrySnapshotTest {
+
+    private TestModules modules;
+    private JavaModuleManager moduleManager;
+
+    @Before
+    public void init() throws Exception {
+        modules = new TestModules();
+        moduleManager = new JavaModuleManager();
+    }
+
+    @After
+    public void close() throws Exception {
+        moduleManager.close();
+        modules.close();
+    }
+
+    @Test
+    public void snapshotUnaffectedByLaterChanges() throws Exception {
+        Module stable = moduleManager.loadModule(module("stable", "Stable"));
+        List<Module> snapshot = moduleManager.getModuleList();
+        Module temporary = moduleManager.loadModule(module("temporary", "Temporary"));
+        assertEquals(1, snapshot.size());
+        assertSame(stable, snapshot.get(0));
+        assertEquals(2, moduleManager.getModuleList().size());
+        moduleManager.unloadModule(temporary);
+        assertEquals(1, moduleManager.getModuleList().size());
+    }
+
+    @Test(timeout = 60000)
+    public void consistentUnderConcurrentLoadAndUnload() throws Exception {
+        Module stable = moduleManager.loadModule(module("stable", "Stable"));
+        File temporaryFile = module("temporary", "Temporary");
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread[] readers = new Thread[2];
+        for(int i = 0; i < readers.length; i++) {
+            readers[i] = new Thread(() -> {
+                try {
+                    while(running.get()) {
+                        List<Module> snapshot = moduleManager.getModuleList();
+                        int size = snapshot.size();
+                        Set<String> names = new HashSet<>();
+                        for(Module module : snapshot) {
+                            assertNotNull(module);
+                            if(!names.add(module.getName()))
+                                throw new AssertionError("快照中存在重复的模块 '" + module.getName() + "'.");
+                        }
+                        if(!names.contains("Stable") || size < 1 || size > 2)
+                            throw new AssertionError("快照不一致: " + names);
+                        assertSame(stable, moduleManager.getModule("Stable"));
+                        for(Module module : moduleManager.getModules())
+                            assertNotNull(module);
+                        assertEquals(size, snapshot.size()); // 快照不会被之后的修改影响
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            });
+            readers[i].start();
+        }
+        try {
+            for(int i = 0; i < 30; i++) {
+                Module module = moduleManager.loadModule(temporaryFile);
+                moduleManager.unloadModule(module);
+            }
+        } finally {
+            running.set(false);
+            for(Thread reader : readers)
+                reader.join();
+        }
+        if(failure.get() != null)
+            throw new AssertionError(failure.get());
+        assertNull(moduleManager.getModule("Temporary"));
+        assertEquals(1, moduleManager.getModuleSize());
+    }
+
+    private File module(String packageName, String name) throws Exception {
+        return modules.module(packageName, "name=" + name + "\nmain=" + packageName + ".Main\nversion=1.0\n",
+                "package " + packageName + "; public class Main extends com.minecraft.moonlake.module.java.JavaModule { }");
+    }
+}
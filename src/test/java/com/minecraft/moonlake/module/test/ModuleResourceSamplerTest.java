@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package com.minecraft.moonlake.module.test;
+
+import com.minecraft.moonlake.module.Module;
+import com.minecraft.moonlake.module.java.JavaModuleManager;
+import com.minecraft.moonlake.module.metrics.ModuleResourceSampler;
+import com.minecraft.moonlake.module.metrics.ModuleResourceUsage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ModuleResourceSamplerTest {
+
+    private TestModules modules;
+    private JavaModuleManager moduleManager;
+
+    @Before
+    public void init() throws Exception {
+        modules = new TestModules();
+        moduleManager = new JavaModuleManager();
+    }
+
+    @After
+    public void close() throws Exception {
+        moduleManager.close();
+        modules.close();
+    }
+
+    @Test
+    public void usageAttributedToModule() throws Exception {
+        Module module = moduleManager.loadModule(modules.module("busy", "name=Busy\nmain=busy.Main\nversion=1.0\n",
+                "package busy; public class Main extends com.minecraft.moonlake.module.java.JavaModule {\n" +
+                "    private volatile boolean running;\n" +
+                "    private volatile Object sink;\n" +
+                "    private Thread thread;\n" +
+                "    @Override public void onEnable() {\n" +
+                "        running = true;\n" +
+                "        thread = new Thread(this::spin, \"Busy\");\n" +
+                "        thread.setDaemon(true);\n" +
+                "        thread.start();\n" +
+                "    }\n" +
+                "    private void spin() {\n" +
+                "        while(running) sink = new byte[1024];\n" +
+                "    }\n" +
+                "    @Override public void onDisable() {\n" +
+                "        running = false;\n" +
+                "        try { thread.join(); } catch (InterruptedException e) { Thread.currentThread().interrupt(); }\n" +
+                "    }\n" +
+                "}"));
+        moduleManager.enableModule(module);
+        ModuleResourceSampler sampler = moduleManager.getResourceSampler();
+        sampler.sample(); // 基准值
+        for(int i = 0; i < 10; i++) {
+            Thread.sleep(50L);
+            sampler.sample();
+        }
+        ModuleResourceUsage usage = sampler.getUsage("Busy");
+        assertNotNull(usage);
+        assertEquals(1, usage.getThreads());
+        assertTrue(usage.getLoadedClasses() > 0);
+        assertTrue(usage.getSamples() > 0L);
+        if(sampler.isCpuTimeSupported())
+            assertTrue(usage.getCpuTime(TimeUnit.NANOSECONDS) > 0L);
+        if(sampler.isAllocatedBytesSupported())
+            assertTrue(usage.getAllocatedBytes() >= 1024L);
+        moduleManager.disableModule(module);
+        assertNull(sampler.getUsage("Busy")); // 关闭后移除
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package com.minecraft.moonlake.module.test;
+
+import com.minecraft.moonlake.module.Module;
+import com.minecraft.moonlake.module.java.JavaModuleManager;
+import com.minecraft.moonlake.module.scheduler.ModuleScheduler;
+import com.minecraft.moonlake.module.scheduler.ModuleTask;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ModuleSchedulerTest {
+
+    private TestModules modules;
+    private JavaModuleManager moduleManager;
+    private ModuleScheduler scheduler;
+    private Module module;
+
+    @Before
+    public void init() throws Exception {
+        modules = new TestModules();
+        moduleManager = new JavaModuleManager();
+        scheduler = moduleManager.getScheduler();
+        module = moduleManager.loadModule(modules.module("tasks", "name=Tasks\nmain=tasks.Main\nversion=1.0\n",
+                "package tasks; public class Main extends com.minecraft.moonlake.module.java.JavaModule { }"));
+        moduleManager.enableModule(module);
+    }
+
+    @After
+    public void close() throws Exception {
+        moduleManager.close();
+        modules.close();
+    }
+
+    @Test(timeout = 30000)
+    public void cancelWaitsForStartedRun() throws Exception {
+        for(int i = 0; i < 200; i++) {
+            AtomicBoolean started = new AtomicBoolean();
+            AtomicBoolean finished = new AtomicBoolean();
+            scheduler.runTaskAsync(module, () -> {
+                started.set(true);
+                try {
+                    Thread.sleep(5L);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                finished.set(true);
+            });
+            if(i % 2 == 0)
+                Thread.yield(); // 让一部分任务在取消之前开始
+            scheduler.onModuleDisabled(module); // 取消模块的任务并等待正在执行的任务
+            boolean runningAfterCancel = started.get() && !finished.get();
+            assertFalse("第 " + i + " 次取消之后任务仍在执行.", runningAfterCancel);
+            Thread.sleep(10L);
+            assertEquals("第 " + i + " 次取消之后任务开始执行.", started.get(), finished.get());
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void cancelledQueuedRunNeverExecutes() throws Exception {
+        Queue<Runnable> mainThread = new ConcurrentLinkedQueue<>();
+        scheduler.setMainThreadExecutor(mainThread::add);
+        AtomicInteger runs = new AtomicInteger();
+        ModuleTask task = scheduler.runTask(module, runs::incrementAndGet);
+        while(mainThread.isEmpty()) // 计时器线程已经把执行交给主线程
+            Thread.sleep(5L);
+        assertTrue(task.cancel());
+        mainThread.poll().run();
+        assertEquals(0, runs.get());
+        assertEquals(0, scheduler.getTasks(module).size());
+    }
+
+    @Test(timeout = 10000)
+    public void syncTasksRunOnMainThreadExecutor() throws Exception {
+        Queue<Runnable> mainThread = new ConcurrentLinkedQueue<>();
+        scheduler.setMainThreadExecutor(mainThread::add);
+        AtomicReference<Thread> runner = new AtomicReference<>();
+        ModuleTask task = scheduler.runTaskTimer(module, () -> runner.set(Thread.currentThread()), 0L, 1L, TimeUnit.MILLISECONDS);
+        assertTrue(task.isSync());
+        Thread.sleep(50L);
+        assertEquals(1, mainThread.size()); // 上一次执行还没有结束时跳过
+        mainThread.poll().run();
+        assertSame(Thread.currentThread(), runner.get());
+        task.cancel();
+    }
+
+    @Test(timeout = 10000)
+    public void closeStopsSchedulerThread() throws Exception {
+        AtomicReference<Thread> timer = new AtomicReference<>();
+        CountDownLatch ran = new CountDownLatch(1);
+        scheduler.runTask(module, () -> {
+            timer.set(Thread.currentThread());
+            ran.countDown();
+        });
+        assertTrue(ran.await(5L, TimeUnit.SECONDS));
+        moduleManager.close();
+        timer.get().join(5000L);
+        assertFalse(timer.get().isAlive());
+    }
+}
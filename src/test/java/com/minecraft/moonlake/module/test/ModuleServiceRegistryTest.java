@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package com.minecraft.moonlake.module.test;
+
+import com.minecraft.moonlake.module.Module;
+import com.minecraft.moonlake.module.java.JavaModuleLoader;
+import com.minecraft.moonlake.module.java.JavaModuleManager;
+import com.minecraft.moonlake.module.service.ModuleServiceHandle;
+import com.minecraft.moonlake.module.service.ModuleServiceRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ModuleServiceRegistryTest {
+
+    private TestModules modules;
+    private JavaModuleManager moduleManager;
+
+    @Before
+    public void init() throws Exception {
+        modules = new TestModules();
+        moduleManager = new JavaModuleManager();
+    }
+
+    @After
+    public void close() throws Exception {
+        moduleManager.close();
+        modules.close();
+    }
+
+    @Test
+    public void providerWithoutOwnerIsUnregisteredOnDisable() throws Exception {
+        ModuleServiceRegistry services = moduleManager.getServices();
+        Runnable hostProvider = () -> { };
+        services.register(Runnable.class, hostProvider, 0);
+        ModuleServiceHandle<Runnable> handle = services.getHandle(Runnable.class);
+        Module module = moduleManager.loadModule(modules.module("provider", "name=Provider\nmain=provider.Main\nversion=1.0\n",
+                "package provider; public class Main extends com.minecraft.moonlake.module.java.JavaModule {\n" +
+                "    @Override public void onEnable() { getManager().getServices().register(Runnable.class, () -> { }, 10); }\n" +
+                "}"));
+        moduleManager.enableModule(module);
+        assertEquals(2, handle.getRegistrations().size());
+        assertTrue(handle.get() != hostProvider);
+        moduleManager.disableModule(module);
+        assertSame(hostProvider, handle.get()); // 宿主注册的提供者不受影响
+        assertSame(handle, services.getHandle(Runnable.class));
+    }
+
+    @Test
+    public void noLeakedLoaderAfterUnload() throws Exception {
+        moduleManager.loadModule(modules.module("api", "name=Api\nmain=api.Main\nversion=1.0\n",
+                "package api; public class Main extends com.minecraft.moonlake.module.java.JavaModule {\n" +
+                "    @Override public void onEnable() { getManager().getServices().register(Greeter.class, () -> \"hello\", 0); }\n" +
+                "}",
+                "package api; public interface Greeter { String greet(); }"));
+        moduleManager.loadModule(modules.module("consumer", "name=Consumer\nmain=consumer.Main\nversion=1.0\ndepend=Api\n",
+                "package consumer; public class Main extends com.minecraft.moonlake.module.java.JavaModule {\n" +
+                "    @Override public void onEnable() {\n" +
+                "        com.minecraft.moonlake.module.service.ModuleServiceHandle<api.Greeter> handle = getManager().getServices().getHandle(api.Greeter.class);\n" +
+                "        if(!\"hello\".equals(handle.get().greet())) throw new IllegalStateException();\n" +
+                "    }\n" +
+                "}"));
+        moduleManager.enableModules();
+        assertTrue(moduleManager.isEnable("Api"));
+        assertTrue(moduleManager.isEnable("Consumer"));
+        Class<?> greeter = Class.forName("api.Greeter", false, moduleManager.getModule("Api").getClass().getClassLoader());
+        assertNotNull(moduleManager.getServices().get(greeter));
+        greeter = null;
+        JavaModuleLoader loader = (JavaModuleLoader) moduleManager.getLoader();
+        moduleManager.clearModules();
+        List<String> leaked = loader.getLeakedModules();
+        for(int i = 0; i < 50 && !leaked.isEmpty(); i++) {
+            System.gc();
+            Thread.sleep(20L);
+            leaked = loader.getLeakedModules();
+        }
+        assertEquals("[]", leaked.toString());
+    }
+
+    @Test
+    public void unregisterWithoutProvidersKeepsHandle() {
+        ModuleServiceRegistry services = moduleManager.getServices();
+        ModuleServiceHandle<Runnable> handle = services.getHandle(Runnable.class);
+        Runnable provider = () -> { };
+        assertTrue(services.unregister(services.register(Runnable.class, provider, 0)));
+        assertNull(handle.get());
+        services.register(Runnable.class, provider, 0);
+        assertSame(provider, handle.get()); // 保存的句柄仍然有效
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package com.minecraft.moonlake.module.test;
+
+import com.minecraft.moonlake.module.Module;
+import com.minecraft.moonlake.module.ModuleTimeoutPolicy;
+import com.minecraft.moonlake.module.exception.ModuleTimeoutException;
+import com.minecraft.moonlake.module.java.JavaModuleLoader;
+import com.minecraft.moonlake.module.java.JavaModuleManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ModuleTimeoutPolicyTest {
+
+    private TestModules modules;
+    private JavaModuleManager moduleManager;
+    private ExecutorService executor;
+
+    @Before
+    public void init() throws Exception {
+        modules = new TestModules();
+    }
+
+    @After
+    public void close() throws Exception {
+        if(moduleManager != null)
+            moduleManager.close();
+        if(executor != null)
+            executor.shutdownNow();
+        modules.close();
+    }
+
+    @Test(timeout = 10000)
+    public void skipLeavesCallbackRunning() throws Exception {
+        Module module = load(null, ModuleTimeoutPolicy.SKIP, slowEnable("skip", "Skip", 500L));
+        moduleManager.enableModule(module); // 回调在后台继续执行, 模块按正常启用处理
+        assertTrue(module.isEnable());
+        assertNotNull(moduleManager.getModule("Skip"));
+    }
+
+    @Test(timeout = 10000)
+    public void failMarksModuleNotEnabled() throws Exception {
+        Module module = load(null, ModuleTimeoutPolicy.FAIL, slowEnable("fail", "Fail", 5000L));
+        moduleManager.enableModule(module);
+        assertFalse(module.isEnable());
+        assertNotNull(moduleManager.getModule("Fail"));
+        moduleManager.enableModule(module); // 模块仍然可以再次启用
+        assertFalse(module.isEnable());
+    }
+
+    @Test(timeout = 10000)
+    public void failIgnoringInterruptFallsBackToSkip() throws Exception {
+        Module module = load(null, ModuleTimeoutPolicy.FAIL, modules.module("stubborn",
+                "name=Stubborn\nmain=stubborn.Main\nversion=1.0\nenable-timeout=100\n",
+                "package stubborn; public class Main extends com.minecraft.moonlake.module.java.JavaModule {\n" +
+                "    @Override public void onEnable() {\n" +
+                "        long end = System.currentTimeMillis() + 500L;\n" +
+                "        while(System.currentTimeMillis() < end) try { Thread.sleep(10L); } catch (InterruptedException e) { }\n" +
+                "        new Helper();\n" +
+                "    }\n" +
+                "}",
+                "package stubborn; class Helper { }"));
+        moduleManager.enableModule(module); // 线程没有响应中断, 按 SKIP 处理而不是移除仍在使用的类
+        assertTrue(module.isEnable());
+        assertNotNull(moduleManager.getModule("Stubborn"));
+    }
+
+    @Test(timeout = 10000)
+    public void unloadRemovesModuleAndDependents() throws Exception {
+        Module module = load(null, ModuleTimeoutPolicy.UNLOAD, slowEnable("unload", "Unload", 5000L));
+        moduleManager.loadModule(modules.module("dependent", "name=Dependent\nmain=dependent.Main\nversion=1.0\ndepend=Unload\n",
+                "package dependent; public class Main extends com.minecraft.moonlake.module.java.JavaModule { }"));
+        moduleManager.enableModule(module);
+        assertFalse(module.isEnable());
+        assertNull(moduleManager.getModule("Unload"));
+        assertNull(moduleManager.getModule("Dependent"));
+    }
+
+    @Test(timeout = 10000)
+    public void unloadWithExecutorDuringClear() throws Exception {
+        executor = Executors.newFixedThreadPool(2);
+        load(executor, ModuleTimeoutPolicy.UNLOAD, modules.module("slowoff",
+                "name=SlowOff\nmain=slowoff.Main\nversion=1.0\ndisable-timeout=100\n",
+                "package slowoff; public class Main extends com.minecraft.moonlake.module.java.JavaModule {\n" +
+                "    @Override public void onDisable() { try { Thread.sleep(5000L); } catch (InterruptedException e) { } }\n" +
+                "}"));
+        moduleManager.loadModule(modules.module("other", "name=Other\nmain=other.Main\nversion=1.0\n",
+                "package other; public class Main extends com.minecraft.moonlake.module.java.JavaModule { }"));
+        moduleManager.enableModules();
+        assertTrue(moduleManager.isEnable("SlowOff"));
+        assertTrue(moduleManager.isEnable("Other"));
+        // 同一层的两个模块在执行器中并行关闭, 超时的卸载不能在工作线程中等待管理器锁
+        moduleManager.clearModules();
+        assertEquals(0, moduleManager.getModuleSize());
+    }
+
+    @Test(timeout = 10000)
+    public void unloadWithExecutorDuringEnable() throws Exception {
+        executor = Executors.newFixedThreadPool(2);
+        load(executor, ModuleTimeoutPolicy.UNLOAD, slowEnable("slowon", "SlowOn", 5000L));
+        moduleManager.loadModule(modules.module("other", "name=Other\nmain=other.Main\nversion=1.0\n",
+                "package other; public class Main extends com.minecraft.moonlake.module.java.JavaModule { }"));
+        moduleManager.enableModules();
+        assertNull(moduleManager.getModule("SlowOn"));
+        assertTrue(moduleManager.isEnable("Other"));
+    }
+
+    @Test(timeout = 10000)
+    public void unloadReportedToAsyncCaller() throws Exception {
+        Module module = load(null, ModuleTimeoutPolicy.UNLOAD, slowEnable("async", "Async", 5000L));
+        try {
+            moduleManager.enableModuleAsync(module).join();
+            fail("超时的启用不应该正常完成.");
+        } catch (CompletionException e) {
+            assertTrue(e.getCause() instanceof ModuleTimeoutException);
+            assertEquals(ModuleTimeoutPolicy.UNLOAD, ((ModuleTimeoutException) e.getCause()).getPolicy());
+        }
+        assertNull(moduleManager.getModule("Async"));
+    }
+
+    private Module load(ExecutorService executor, ModuleTimeoutPolicy policy, File moduleFile) throws Exception {
+        moduleManager = executor != null ? new JavaModuleManager(executor) : new JavaModuleManager();
+        ((JavaModuleLoader) moduleManager.getLoader()).setTimeoutPolicy(policy);
+        return moduleManager.loadModule(moduleFile);
+    }
+
+    private File slowEnable(String jarName, String name, long millis) throws Exception {
+        return modules.module(jarName, "name=" + name + "\nmain=" + jarName + ".Main\nversion=1.0\nenable-timeout=100\n",
+                "package " + jarName + "; public class Main extends com.minecraft.moonlake.module.java.JavaModule {\n" +
+                "    @Override public void onEnable() { try { Thread.sleep(" + millis + "L); } catch (InterruptedException e) { } }\n" +
+                "}");
+    }
+}
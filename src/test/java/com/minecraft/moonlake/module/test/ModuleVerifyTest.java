@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package com.minecraft.moonlake.module.test;
+
+import com.minecraft.moonlake.module.Module;
+import com.minecraft.moonlake.module.exception.InvalidModuleException;
+import com.minecraft.moonlake.module.java.JavaModuleLoader;
+import com.minecraft.moonlake.module.java.JavaModuleManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.CodeSigner;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.jar.JarFile;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ModuleVerifyTest {
+
+    private static final String UNKNOWN_DIGEST = "0000000000000000000000000000000000000000000000000000000000000000";
+
+    private TestModules modules;
+    private JavaModuleManager moduleManager;
+
+    @Before
+    public void init() throws Exception {
+        modules = new TestModules();
+        moduleManager = new JavaModuleManager();
+    }
+
+    @After
+    public void close() throws Exception {
+        moduleManager.close();
+        modules.close();
+    }
+
+    @Test
+    public void allowlistHit() throws Exception {
+        File moduleFile = module("1.0", "verified.jar");
+        JavaModuleLoader loader = (JavaModuleLoader) moduleManager.getLoader();
+        loader.setTrustedDigests(Collections.singleton(loader.getDigest(moduleFile)));
+        Module module = moduleManager.loadModule(moduleFile);
+        assertNotNull(module);
+        moduleManager.enableModule(module);
+        assertTrue(module.isEnable());
+    }
+
+    @Test
+    public void allowlistMiss() throws Exception {
+        File moduleFile = module("1.0", "verified.jar");
+        ((JavaModuleLoader) moduleManager.getLoader()).setTrustedDigests(Collections.singleton(UNKNOWN_DIGEST));
+        try {
+            moduleManager.loadModule(moduleFile);
+            fail("摘要不在信任列表中的模块不应该被加载.");
+        } catch (InvalidModuleException e) {
+            // 拒绝加载
+        }
+        assertNull(moduleManager.getModule("Verified"));
+        assertEquals(0, moduleManager.loadModules(modules.getModuleDir()).length);
+    }
+
+    @Test
+    public void forgedIndexEntry() throws Exception {
+        File moduleFile = module("1.0", "verified.jar");
+        JavaModuleLoader loader = (JavaModuleLoader) moduleManager.getLoader();
+        String digest = loader.getDigest(moduleFile);
+        loader.setTrustedDigests(Collections.singleton(digest));
+        assertEquals(1, moduleManager.loadModules(modules.getModuleDir()).length); // 写入索引缓存
+        moduleManager.close();
+        // 替换为长度相同而内容不同的文件并恢复修改时间, 索引缓存的键不会变化
+        File forged = module("6.6", "forged.jar");
+        byte[] forgedBytes = Files.readAllBytes(forged.toPath());
+        Files.delete(forged.toPath());
+        assertEquals(moduleFile.length(), (long) forgedBytes.length);
+        long lastModified = moduleFile.lastModified();
+        Files.write(moduleFile.toPath(), forgedBytes);
+        assertTrue(moduleFile.setLastModified(lastModified));
+        moduleManager = new JavaModuleManager();
+        loader = (JavaModuleLoader) moduleManager.getLoader();
+        loader.setTrustedDigests(Collections.singleton(digest));
+        assertEquals(0, moduleManager.loadModules(modules.getModuleDir()).length);
+        assertNull(moduleManager.getModule("Verified"));
+    }
+
+    @Test
+    public void digestCachedInIndex() throws Exception {
+        File moduleFile = module("1.0", "verified.jar");
+        JavaModuleLoader loader = (JavaModuleLoader) moduleManager.getLoader();
+        String digest = loader.getDigest(moduleFile);
+        loader.setTrustedDigests(Collections.singleton(digest));
+        assertEquals(1, moduleManager.loadModules(modules.getModuleDir()).length);
+        File cacheFile = new File(modules.getModuleDir(), ".module-index");
+        assertTrue(contains(Files.readAllBytes(cacheFile.toPath()), toBytes(digest)));
+        moduleManager.close();
+        // 关闭摘要缓存后不再写入
+        Files.delete(cacheFile.toPath());
+        moduleManager = new JavaModuleManager();
+        loader = (JavaModuleLoader) moduleManager.getLoader();
+        loader.setDigestCache(false);
+        loader.setTrustedDigests(Collections.singleton(digest));
+        assertEquals(1, moduleManager.loadModules(modules.getModuleDir()).length);
+        assertTrue(cacheFile.isFile());
+        assertFalse(contains(Files.readAllBytes(cacheFile.toPath()), toBytes(digest)));
+    }
+
+    @Test
+    public void signedJarKeepsCodeSigners() throws Exception {
+        File moduleFile = module("1.0", "signed.jar");
+        File keyStore = new File(modules.getModuleDir().getParentFile(), "signer.jks");
+        String bin = System.getProperty("java.home") + File.separator + "bin" + File.separator;
+        run(bin + "keytool", "-genkeypair", "-keystore", keyStore.getPath(), "-storepass", "password", "-keypass", "password",
+                "-alias", "signer", "-keyalg", "RSA", "-dname", "CN=MoonLake", "-validity", "1");
+        run(bin + "jarsigner", "-keystore", keyStore.getPath(), "-storepass", "password", moduleFile.getPath(), "signer");
+        JavaModuleLoader loader = (JavaModuleLoader) moduleManager.getLoader();
+        loader.setTrustedDigests(Collections.singleton(loader.getDigest(moduleFile)));
+        Module module = moduleManager.loadModule(moduleFile);
+        CodeSigner[] signers = module.getClass().getProtectionDomain().getCodeSource().getCodeSigners();
+        assertNotNull(signers);
+        assertEquals(1, signers.length);
+    }
+
+    private static void run(String... command) throws Exception {
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        byte[] output = read(process.getInputStream());
+        assertEquals(new String(output, StandardCharsets.UTF_8), 0, process.waitFor());
+    }
+
+    private static byte[] toBytes(String hex) {
+        byte[] bytes = new byte[hex.length() / 2];
+        for(int i = 0; i < bytes.length; i++)
+            bytes[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+        return bytes;
+    }
+
+    private static boolean contains(byte[] content, byte[] part) {
+        outer:
+        for(int i = 0; i + part.length <= content.length; i++) {
+            for(int j = 0; j < part.length; j++)
+                if(content[i + j] != part[j])
+                    continue outer;
+            return true;
+        }
+        return false;
+    }
+
+    /** 生成不压缩存储的模块文件, 不同版本号的文件长度相同 */
+    private File module(String version, String jarName) throws IOException {
+        File compiled = modules.module("verified-" + version, "name=Verified\nmain=verified.Main\nversion=" + version + "\n",
+                "package verified; public class Main extends com.minecraft.moonlake.module.java.JavaModule { }");
+        File moduleFile = new File(modules.getModuleDir(), jarName);
+        try (JarFile jarFile = new JarFile(compiled); ZipOutputStream output = new ZipOutputStream(new FileOutputStream(moduleFile))) {
+            Enumeration<? extends ZipEntry> entries = jarFile.entries();
+            while(entries.hasMoreElements()) {
+                ZipEntry source = entries.nextElement();
+                byte[] content = read(jarFile.getInputStream(source));
+                CRC32 crc = new CRC32();
+                crc.update(content);
+                ZipEntry entry = new ZipEntry(source.getName());
+                entry.setMethod(ZipEntry.STORED);
+                entry.setTime(0L);
+                entry.setSize(content.length);
+                entry.setCrc(crc.getValue());
+                output.putNextEntry(entry);
+                output.write(content);
+                output.closeEntry();
+            }
+        }
+        Files.delete(compiled.toPath());
+        return moduleFile;
+    }
+
+    private static byte[] read(InputStream input) throws IOException {
+        try (InputStream stream = input) {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while((read = stream.read(buffer)) != -1)
+                output.write(buffer, 0, read);
+            return output.toByteArray();
+        }
+    }
+}
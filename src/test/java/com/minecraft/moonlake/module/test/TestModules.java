@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package com.minecraft.moonlake.module.test;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * 在临时目录中编译测试模块并打包为模块 Jar 文件. 后编译的模块可以引用之前编译的模块中的类.
+ */
+final class TestModules implements Closeable {
+
+    private static final Pattern PACKAGE = Pattern.compile("package\\s+([\\w.]+)\\s*;");
+    private static final Pattern CLASS = Pattern.compile("(?:class|interface|enum)\\s+(\\w+)");
+
+    private final Path root;
+    private final File moduleDir;
+    private final List<String> classPath;
+
+    TestModules() throws IOException {
+        this.root = Files.createTempDirectory("moonlake-module-test");
+        this.moduleDir = Files.createDirectories(root.resolve("modules")).toFile();
+        this.classPath = new ArrayList<>();
+        this.classPath.add(System.getProperty("java.class.path"));
+    }
+
+    File getModuleDir() {
+        return moduleDir;
+    }
+
+    /**
+     * 编译模块的源代码并在模块目录中生成 Jar 文件.
+     *
+     * @param properties module.properties 的内容, 每行一个属性
+     * @param sources 每个元素为一个顶层类的完整源代码
+     */
+    File module(String jarName, String properties, String... sources) throws IOException {
+        Path sourceDir = Files.createDirectories(root.resolve("src").resolve(jarName));
+        Path classDir = Files.createDirectories(root.resolve("classes").resolve(jarName));
+        List<String> arguments = new ArrayList<>();
+        arguments.add("-nowarn");
+        arguments.add("-classpath");
+        arguments.add(String.join(File.pathSeparator, classPath));
+        arguments.add("-d");
+        arguments.add(classDir.toString());
+        for(String source : sources) {
+            Matcher packageMatcher = PACKAGE.matcher(source);
+            Matcher classMatcher = CLASS.matcher(source);
+            if(!packageMatcher.find() || !classMatcher.find())
+                throw new IllegalArgumentException("无法识别源代码的包名或类名.");
+            Path file = Files.createDirectories(sourceDir.resolve(packageMatcher.group(1).replace('.', '/'))).resolve(classMatcher.group(1) + ".java");
+            try (OutputStream output = Files.newOutputStream(file)) {
+                output.write(source.getBytes(StandardCharsets.UTF_8));
+            }
+            arguments.add(file.toString());
+        }
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if(compiler == null)
+            throw new IllegalStateException("测试需要在 JDK 中运行以编译模块.");
+        if(compiler.run(null, null, null, arguments.toArray(new String[arguments.size()])) != 0)
+            throw new IllegalStateException("无法编译测试模块 '" + jarName + "'.");
+        classPath.add(classDir.toString());
+        File jar = new File(moduleDir, jarName + ".jar");
+        try (JarOutputStream output = new JarOutputStream(Files.newOutputStream(jar.toPath()))) {
+            output.putNextEntry(new JarEntry("module.properties"));
+            output.write(properties.getBytes(StandardCharsets.UTF_8));
+            output.closeEntry();
+            try (Stream<Path> stream = Files.walk(classDir)) {
+                for(Path classFile : (Iterable<Path>) stream.filter(Files::isRegularFile)::iterator) {
+                    output.putNextEntry(new JarEntry(classDir.relativize(classFile).toString().replace(File.separatorChar, '/')));
+                    Files.copy(classFile, output);
+                    output.closeEntry();
+                }
+            }
+        }
+        return jar;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try (Stream<Path> stream = Files.walk(root)) {
+            stream.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+}